@@ -0,0 +1,85 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/** Builds the repositories the JMH benchmarks run against.  Gitlet works
+ *  on the current directory, so the benchmarks run in a scratch
+ *  directory (see benchmarks/Makefile) which this class wipes and
+ *  refills.  It refuses to touch a directory that lacks the marker
+ *  MARKER, which is a directory so that gitlet does not see it as an
+ *  untracked file.
+ *  @author Ruize Xu
+ */
+class BenchRepo {
+
+    /** Name of the directory marking the current one as scratch. */
+    static final String MARKER = ".gitlet-bench";
+
+    /** Return the name of the Ith working file. */
+    static String fileName(int i) {
+        return String.format("file%06d.txt", i);
+    }
+
+    /** Delete the repository and every plain file, except MARKER, in the
+     *  current directory. */
+    static void wipe() {
+        File cwd = new File(System.getProperty("user.dir"));
+        if (!new File(cwd, MARKER).isDirectory()) {
+            throw new IllegalStateException("not a benchmark scratch "
+                                            + "directory: " + cwd);
+        }
+        try (Stream<Path> paths = Files.walk(cwd.toPath())) {
+            paths.sorted(Comparator.reverseOrder())
+                .filter(p -> !p.toFile().equals(cwd))
+                .filter(p -> !p.toFile().equals(new File(cwd, MARKER)))
+                .forEach(p -> p.toFile().delete());
+        } catch (IOException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+
+    /** Write SIZE bytes drawn from RANDOM to the working file NAME. */
+    static void writeFile(String name, int size, Random random) {
+        byte[] contents = new byte[size];
+        random.nextBytes(contents);
+        File file = new File(name);
+        file.delete();
+        Utils.writeContents(file, (Object) contents);
+    }
+
+    /** Wipe the current directory and build a repository there with
+     *  FILES files of SIZE bytes on master, followed by a linear history
+     *  of DEPTH more commits that each change one file.  Contents come
+     *  from a generator seeded with SEED.  Return the repository, which
+     *  has also been saved. */
+    static Repo build(int files, int size, int depth, long seed) {
+        wipe();
+        Random random = new Random(seed);
+        Repo repo = new Repo();
+        for (int i = 0; i < files; i += 1) {
+            writeFile(fileName(i), size, random);
+            repo.add(fileName(i));
+        }
+        repo.commit("initial files");
+        for (int d = 0; d < depth; d += 1) {
+            change(repo, d % files, size, random, "change " + d);
+        }
+        repo.save();
+        return repo;
+    }
+
+    /** Rewrite file I of REPO with SIZE bytes from RANDOM and commit it
+     *  with message MSG. */
+    static void change(Repo repo, int i, int size, Random random,
+                       String msg) {
+        writeFile(fileName(i), size, random);
+        repo.add(fileName(i));
+        repo.commit(msg);
+    }
+}
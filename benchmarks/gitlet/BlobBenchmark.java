@@ -0,0 +1,69 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of hashing one file into a Blob.
+ *  @author Ruize Xu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BlobBenchmark {
+
+    /** Size of the file hashed, in bytes.  The largest is chunked. */
+    @Param({"1024", "65536", "4194304"})
+    public int fileSize;
+
+    /** The file hashed. */
+    private String _name;
+
+    /** Create a repository holding one file of fileSize bytes. */
+    @Setup
+    public void setup() {
+        BenchRepo.build(1, fileSize, 0, 61);
+        _name = BenchRepo.fileName(0);
+    }
+
+    /** Hash the file into a Blob, storing chunks if it is large. */
+    @Benchmark
+    public Blob createBlob() {
+        return new Blob(_name);
+    }
+
+    /** Hash the file alone, as status does to compare it. */
+    @Benchmark
+    public String sha1File() {
+        return Utils.sha1File(new File(_name));
+    }
+
+    /** Hash the file's contents already in memory. */
+    @Benchmark
+    public String sha1Bytes(BytesState bytes) {
+        return Utils.sha1(bytes.contents);
+    }
+
+    /** Contents held in memory for sha1Bytes. */
+    @State(Scope.Benchmark)
+    public static class BytesState {
+        /** fileSize random bytes. */
+        byte[] contents;
+
+        /** Fill CONTENTS with fileSize bytes for the benchmark OUTER. */
+        @Setup
+        public void setup(BlobBenchmark outer) {
+            contents = new byte[outer.fileSize];
+            new Random(61).nextBytes(contents);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package gitlet;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of encoding, decoding and looking up commits.
+ *  @author Ruize Xu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CommitBenchmark {
+
+    /** Number of files tracked by each commit. */
+    @Param({"100", "10000"})
+    public int fileCount;
+
+    /** Size of each tracked file, in bytes. */
+    @Param({"1024"})
+    public int fileSize;
+
+    /** Number of commits after the first. */
+    @Param({"10", "1000"})
+    public int historyDepth;
+
+    /** The repository. */
+    private Repo _repo;
+
+    /** The head commit. */
+    private Commit _head;
+
+    /** Build the repository. */
+    @Setup
+    public void setup() {
+        _repo = BenchRepo.build(fileCount, fileSize, historyDepth, 61);
+        _head = _repo.uidToCommit(_repo.getHead());
+    }
+
+    /** Serialize the head commit. */
+    @Benchmark
+    public byte[] encode() {
+        return Utils.serialize(_head);
+    }
+
+    /** Read and deserialize the head commit. */
+    @Benchmark
+    public Commit decode() {
+        return Utils.readObject(ObjectStore.commitFile(_head.getUid()),
+                                Commit.class);
+    }
+
+    /** Look up the head commit by id. */
+    @Benchmark
+    public Commit uidToCommit() {
+        return _repo.uidToCommit(_repo.getHead());
+    }
+}
@@ -0,0 +1,74 @@
+package gitlet;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of finding a split point and merging two branches that
+ *  each changed a different file since it.
+ *  @author Ruize Xu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class HistoryBenchmark {
+
+    /** Number of files tracked by each commit. */
+    @Param({"100", "10000"})
+    public int fileCount;
+
+    /** Size of each tracked file, in bytes. */
+    @Param({"1024"})
+    public int fileSize;
+
+    /** Number of commits before the branches diverge. */
+    @Param({"10", "1000"})
+    public int historyDepth;
+
+    /** The repository, on master. */
+    private Repo _repo;
+
+    /** The head of master before any merge. */
+    private String _beforeMerge;
+
+    /** Build the history, then branch "other" off it and commit one
+     *  change on each branch. */
+    @Setup(Level.Trial)
+    public void setup() {
+        _repo = BenchRepo.build(fileCount, fileSize, historyDepth, 61);
+        Random random = new Random(62);
+        _repo.branch("other");
+        _repo.checkout("other");
+        BenchRepo.change(_repo, 0, fileSize, random, "change on other");
+        _repo.checkout("master");
+        BenchRepo.change(_repo, 1, fileSize, random, "change on master");
+        _beforeMerge = _repo.getHead();
+    }
+
+    /** Move master back to where it was before the last merge. */
+    @Setup(Level.Invocation)
+    public void undoMerge() {
+        _repo.reset(_beforeMerge);
+    }
+
+    /** Find the split point of master and other. */
+    @Benchmark
+    public String splitPoint() {
+        return _repo.splitPoint("master", "other");
+    }
+
+    /** Merge other into master. */
+    @Benchmark
+    public MergeResult merge() {
+        return _repo.merge("other");
+    }
+}
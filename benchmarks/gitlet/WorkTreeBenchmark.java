@@ -0,0 +1,75 @@
+package gitlet;
+
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of the commands that scan or rewrite the working tree.
+ *  @author Ruize Xu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WorkTreeBenchmark {
+
+    /** Number of files in the working tree. */
+    @Param({"100", "10000"})
+    public int fileCount;
+
+    /** Size of each file, in bytes. */
+    @Param({"1024", "65536"})
+    public int fileSize;
+
+    /** Number of commits after the first. */
+    @Param({"10"})
+    public int historyDepth;
+
+    /** Fraction of the files that differ between master and other. */
+    private static final int CHANGED_PERCENT = 10;
+
+    /** The repository. */
+    private Repo _repo;
+
+    /** True while master is checked out. */
+    private boolean _onMaster;
+
+    /** Build the repository, with a branch "other" that differs from
+     *  master in CHANGED_PERCENT of the files. */
+    @Setup
+    public void setup() {
+        _repo = BenchRepo.build(fileCount, fileSize, historyDepth, 61);
+        Random random = new Random(62);
+        _repo.branch("other");
+        _repo.checkout("other");
+        for (int i = 0; i < fileCount; i += 100 / CHANGED_PERCENT) {
+            BenchRepo.writeFile(BenchRepo.fileName(i), fileSize, random);
+            _repo.add(BenchRepo.fileName(i));
+        }
+        _repo.commit("change on other");
+        _repo.checkout("master");
+        _onMaster = true;
+    }
+
+    /** Add every file of an unchanged working tree, which walks the
+     *  tree and hashes each file, staging nothing. */
+    @Benchmark
+    public void addAll() {
+        _repo.add(Collections.singletonList("."));
+    }
+
+    /** Switch to the other branch. */
+    @Benchmark
+    public void checkout() {
+        _repo.checkout(_onMaster ? "other" : "master");
+        _onMaster = !_onMaster;
+    }
+}
@@ -0,0 +1,320 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/** A compressed set of non-negative ints, laid out as a Roaring bitmap:
+ *  the ints are grouped by their high 16 bits, and each group is kept as
+ *  a sorted array of its low 16 bits while it has at most ARRAY_MAX
+ *  members, and as a 65536-bit bitmap once it has more.  Sparse sets
+ *  cost two bytes a member and dense ones one bit, and unions and
+ *  differences work a group, or a word of 64 members, at a time.
+ *  @author Ruize Xu
+ */
+final class Bitmap {
+
+    /** Most members of a group kept as an array. */
+    static final int ARRAY_MAX = 4096;
+
+    /** Longs in the bitmap of a dense group. */
+    private static final int WORDS = 1 << 10;
+
+    /** High 16 bits of each group, in increasing order. */
+    private char[] _keys;
+
+    /** The members of each group: a char array, sorted, of which the
+     *  first _cards entries are used, or a long array of WORDS words. */
+    private Object[] _groups;
+
+    /** Number of members of each group. */
+    private int[] _cards;
+
+    /** Number of groups. */
+    private int _count;
+
+    /** An empty set. */
+    Bitmap() {
+        _keys = new char[4];
+        _groups = new Object[4];
+        _cards = new int[4];
+    }
+
+    /** Return true if X is a member. */
+    boolean contains(int x) {
+        int i = find((char) (x >>> 16));
+        if (i < 0) {
+            return false;
+        }
+        char low = (char) x;
+        Object group = _groups[i];
+        if (group instanceof long[]) {
+            return (((long[]) group)[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) group, 0, _cards[i], low) >= 0;
+    }
+
+    /** Add X, which is not negative. */
+    void add(int x) {
+        char key = (char) (x >>> 16);
+        char low = (char) x;
+        int i = find(key);
+        if (i < 0) {
+            i = insertGroup(-i - 1, key, new char[4], 0);
+        }
+        Object group = _groups[i];
+        if (group instanceof long[]) {
+            long[] words = (long[]) group;
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) == 0) {
+                words[low >>> 6] |= bit;
+                _cards[i] += 1;
+            }
+            return;
+        }
+        char[] lows = (char[]) group;
+        int card = _cards[i];
+        int at = Arrays.binarySearch(lows, 0, card, low);
+        if (at >= 0) {
+            return;
+        }
+        at = -at - 1;
+        if (card == ARRAY_MAX) {
+            long[] words = toWords(lows, card);
+            words[low >>> 6] |= 1L << low;
+            _groups[i] = words;
+        } else {
+            if (card == lows.length) {
+                lows = Arrays.copyOf(lows, Math.min(ARRAY_MAX, 2 * card));
+                _groups[i] = lows;
+            }
+            System.arraycopy(lows, at, lows, at + 1, card - at);
+            lows[at] = low;
+        }
+        _cards[i] = card + 1;
+    }
+
+    /** Return the number of members. */
+    int cardinality() {
+        int total = 0;
+        for (int i = 0; i < _count; i += 1) {
+            total += _cards[i];
+        }
+        return total;
+    }
+
+    /** Add every member of OTHER to this set. */
+    void or(Bitmap other) {
+        for (int j = 0; j < other._count; j += 1) {
+            char key = other._keys[j];
+            int i = find(key);
+            if (i < 0) {
+                insertGroup(-i - 1, key, copy(other._groups[j]),
+                            other._cards[j]);
+                continue;
+            }
+            long[] words = words(i);
+            Object theirs = other._groups[j];
+            if (theirs instanceof long[]) {
+                long[] src = (long[]) theirs;
+                for (int w = 0; w < WORDS; w += 1) {
+                    words[w] |= src[w];
+                }
+            } else {
+                char[] lows = (char[]) theirs;
+                for (int k = 0; k < other._cards[j]; k += 1) {
+                    words[lows[k] >>> 6] |= 1L << lows[k];
+                }
+            }
+            settle(i, words);
+        }
+    }
+
+    /** Return the members of this set that are not in OTHER. */
+    Bitmap andNot(Bitmap other) {
+        Bitmap result = new Bitmap();
+        for (int i = 0; i < _count; i += 1) {
+            int j = other.find(_keys[i]);
+            long[] words = toWords(_groups[i], _cards[i]);
+            if (j >= 0) {
+                Object theirs = other._groups[j];
+                if (theirs instanceof long[]) {
+                    long[] src = (long[]) theirs;
+                    for (int w = 0; w < WORDS; w += 1) {
+                        words[w] &= ~src[w];
+                    }
+                } else {
+                    char[] lows = (char[]) theirs;
+                    for (int k = 0; k < other._cards[j]; k += 1) {
+                        words[lows[k] >>> 6] &= ~(1L << lows[k]);
+                    }
+                }
+            }
+            int card = count(words);
+            if (card > 0) {
+                int at = result.insertGroup(result._count, _keys[i], words,
+                                            card);
+                result.settle(at, words);
+            }
+        }
+        return result;
+    }
+
+    /** Call ACTION on each member, in increasing order. */
+    void forEach(IntConsumer action) {
+        for (int i = 0; i < _count; i += 1) {
+            int high = _keys[i] << 16;
+            Object group = _groups[i];
+            if (group instanceof long[]) {
+                long[] words = (long[]) group;
+                for (int w = 0; w < WORDS; w += 1) {
+                    for (long bits = words[w]; bits != 0; bits &= bits - 1) {
+                        action.accept(high | w << 6
+                                      | Long.numberOfTrailingZeros(bits));
+                    }
+                }
+            } else {
+                char[] lows = (char[]) group;
+                for (int k = 0; k < _cards[i]; k += 1) {
+                    action.accept(high | lows[k]);
+                }
+            }
+        }
+    }
+
+    /** Return the number of bytes write() takes. */
+    int byteSize() {
+        int size = 4;
+        for (int i = 0; i < _count; i += 1) {
+            size += 6 + (_groups[i] instanceof long[] ? 8 * WORDS
+                         : 2 * _cards[i]);
+        }
+        return size;
+    }
+
+    /** Write this set to OUT: the number of groups, then for each its
+     *  key, its number of members and its array or words. */
+    void write(ByteBuffer out) {
+        out.putInt(_count);
+        for (int i = 0; i < _count; i += 1) {
+            out.putChar(_keys[i]);
+            out.putInt(_cards[i]);
+            Object group = _groups[i];
+            if (group instanceof long[]) {
+                out.asLongBuffer().put((long[]) group);
+                out.position(out.position() + 8 * WORDS);
+            } else {
+                out.asCharBuffer().put((char[]) group, 0, _cards[i]);
+                out.position(out.position() + 2 * _cards[i]);
+            }
+        }
+    }
+
+    /** Return the set written by write() at the position of IN,
+     *  advancing IN past it. */
+    static Bitmap read(ByteBuffer in) {
+        Bitmap result = new Bitmap();
+        int n = in.getInt();
+        for (int i = 0; i < n; i += 1) {
+            char key = in.getChar();
+            int card = in.getInt();
+            Object group;
+            if (card > ARRAY_MAX) {
+                long[] words = new long[WORDS];
+                in.asLongBuffer().get(words);
+                in.position(in.position() + 8 * WORDS);
+                group = words;
+            } else {
+                char[] lows = new char[card];
+                in.asCharBuffer().get(lows);
+                in.position(in.position() + 2 * card);
+                group = lows;
+            }
+            result.insertGroup(i, key, group, card);
+        }
+        return result;
+    }
+
+    /** Return the index of the group with KEY, or -(insertion point) - 1
+     *  if there is none. */
+    private int find(char key) {
+        return Arrays.binarySearch(_keys, 0, _count, key);
+    }
+
+    /** Insert at index I the group KEY with members GROUP, CARD of them,
+     *  and return I. */
+    private int insertGroup(int i, char key, Object group, int card) {
+        if (_count == _keys.length) {
+            int n = 2 * _count;
+            _keys = Arrays.copyOf(_keys, n);
+            _groups = Arrays.copyOf(_groups, n);
+            _cards = Arrays.copyOf(_cards, n);
+        }
+        System.arraycopy(_keys, i, _keys, i + 1, _count - i);
+        System.arraycopy(_groups, i, _groups, i + 1, _count - i);
+        System.arraycopy(_cards, i, _cards, i + 1, _count - i);
+        _keys[i] = key;
+        _groups[i] = group;
+        _cards[i] = card;
+        _count += 1;
+        return i;
+    }
+
+    /** Return group I as words, converting it to a bitmap if it is an
+     *  array; the caller calls settle() when done with them. */
+    private long[] words(int i) {
+        if (!(_groups[i] instanceof long[])) {
+            _groups[i] = toWords(_groups[i], _cards[i]);
+        }
+        return (long[]) _groups[i];
+    }
+
+    /** Recount group I, whose members are now WORDS, and keep it as an
+     *  array if it is small enough. */
+    private void settle(int i, long[] words) {
+        int card = count(words);
+        _cards[i] = card;
+        if (card <= ARRAY_MAX) {
+            char[] lows = new char[card];
+            int k = 0;
+            for (int w = 0; w < WORDS; w += 1) {
+                for (long bits = words[w]; bits != 0; bits &= bits - 1) {
+                    lows[k] = (char) (w << 6
+                                      | Long.numberOfTrailingZeros(bits));
+                    k += 1;
+                }
+            }
+            _groups[i] = lows;
+        } else {
+            _groups[i] = words;
+        }
+    }
+
+    /** Return a new bitmap of the group GROUP with CARD members. */
+    private static long[] toWords(Object group, int card) {
+        if (group instanceof long[]) {
+            return ((long[]) group).clone();
+        }
+        long[] words = new long[WORDS];
+        char[] lows = (char[]) group;
+        for (int k = 0; k < card; k += 1) {
+            words[lows[k] >>> 6] |= 1L << lows[k];
+        }
+        return words;
+    }
+
+    /** Return a copy of the group GROUP. */
+    private static Object copy(Object group) {
+        return group instanceof long[] ? ((long[]) group).clone()
+            : ((char[]) group).clone();
+    }
+
+    /** Return the number of bits set in WORDS. */
+    private static int count(long[] words) {
+        int card = 0;
+        for (long w : words) {
+            card += Long.bitCount(w);
+        }
+        return card;
+    }
+}
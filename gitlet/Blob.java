@@ -1,56 +1,120 @@
 package gitlet;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Arrays;
+import java.util.List;
 import java.util.Locale;
 
-/** Class Blob for Gitlet.
+/** Class Blob for Gitlet.  A Blob is a small handle naming a version of
+ *  a file; its contents live in the ObjectStore and are only read when
+ *  one of the stream, channel or buffer views is asked for.
  *  @author Ruize Xu
  */
 public class Blob implements Serializable {
+    /** Kept equal to the original class so existing repos still load. */
+    private static final long serialVersionUID = -3933141329562946912L;
+
+    /** Format of _timestamp, built once rather than for every file. */
+    private static final DateTimeFormatter TIMESTAMP =
+        DateTimeFormatter.ofPattern("EEE MMM d HH:mm:ss yyyy xxxx",
+                                    Locale.ENGLISH);
+
     /** Name of the modified file. */
     private String _name;
 
     /** HashID of the blob object. */
     private String _hashID;
 
-    /** Store the content which read from file using the
-     * Util.readContents() method. */
-    private byte[] _contents;
-
-    /** Store the content which read from file using the
-     * Util.readContentsAsString() method. */
-    private String _contentsAsString;
-
     /** Store the time the blob object is formed. */
     private String _timestamp;
 
+    /** Ids of the chunks holding a large file's contents, in order, or
+     *  null if the contents are stored whole. */
+    private List<String> _chunks;
+
     /**
-     * Constructor.
+     * Constructor.  Hashes the file NAME without keeping its contents;
+     * a large file is also split into chunks and stored as it is read.
      * @param name String the name of added file
      */
     public Blob(String name) {
         File file = new File(name);
         _name = name;
-        _contents = Utils.readContents(file);
-        _contentsAsString = Utils.readContentsAsString(file);
-        ZonedDateTime now = java.time.ZonedDateTime.now();
-        _timestamp = now.format(DateTimeFormatter.ofPattern
-                ("EEE MMM d HH:mm:ss yyyy xxxx", Locale.ENGLISH));
-        _hashID = createHashId();
+        _timestamp = ZonedDateTime.now().format(TIMESTAMP);
+        if (file.length() > Chunker.THRESHOLD) {
+            _chunks = Chunker.store(file);
+            _hashID = chunkedHashId();
+        } else {
+            _hashID = Utils.sha1File(file);
+        }
     }
 
     /**
-     * Create the unique hashID for the Blob object.
+     * Constructor for contents already in memory, which are stored at
+     * once.  Used to build repositories without a working tree.
+     * @param name String the name of the file
+     * @param contents byte[] the contents of the file
+     */
+    Blob(String name, byte[] contents) {
+        _name = name;
+        _timestamp = "";
+        if (contents.length > Chunker.THRESHOLD) {
+            _chunks = Chunker.store(new ByteArrayInputStream(contents));
+            _hashID = chunkedHashId();
+        } else {
+            _hashID = Utils.sha1(contents);
+            ObjectStore.putBytes(_hashID, contents);
+        }
+    }
+
+    /**
+     * Create the hashID of a chunked blob from its chunk ids.  Like the
+     * id of a whole blob, it depends only on the contents, so identical
+     * files share one stored object whatever their names.
      * @return String the hashID generate by SHA1 algorithm
      */
-    private String createHashId() {
-        String contentToString = Arrays.toString(_contents);
-        String insideBlob = _name + contentToString;
-        return Utils.sha1(insideBlob);
+    private String chunkedHashId() {
+        return Utils.sha1(String.join("", _chunks));
+    }
+
+    /**
+     * Recompute the hashID from the stored contents alone, as blobs
+     * created before ids stopped depending on the file name did not.
+     * @return String the new hashID
+     */
+    String rehash() {
+        if (_chunks != null) {
+            _hashID = chunkedHashId();
+        } else {
+            _hashID = Utils.sha1File(ObjectStore.blobFile(_hashID));
+        }
+        return _hashID;
+    }
+
+    /** Return true if this blob is whole or its hashID is that of its
+     *  chunk ids, as chunkedHashId() makes it. */
+    boolean chunksIntact() {
+        return _chunks == null || _hashID.equals(chunkedHashId());
+    }
+
+    /** Set the hashID to ID, which the caller has already computed. */
+    void setHashID(String id) {
+        _hashID = id;
+    }
+
+    /** Return the Blob hashID, which is what a commit's hash sees of
+     *  each blob it tracks. */
+    @Override
+    public String toString() {
+        return _hashID;
     }
 
     /** Return the Blob name. */
@@ -63,13 +127,48 @@ public class Blob implements Serializable {
         return _hashID;
     }
 
-    /** Return the Blob content as a byte array. */
+    /** Return true if the contents are stored as chunks. */
+    public boolean isChunked() {
+        return _chunks != null;
+    }
+
+    /** Return the ids of the chunks of the contents, in order, or null
+     *  if the blob is not chunked. */
+    public List<String> getChunkIds() {
+        return _chunks;
+    }
+
+    /** Return the size of the contents in bytes. */
+    public long size() {
+        return ObjectStore.size(this);
+    }
+
+    /** Return a new stream over the contents, which the caller closes. */
+    public InputStream openStream() {
+        return ObjectStore.open(this);
+    }
+
+    /** Return a new channel over the contents, which the caller closes. */
+    public ReadableByteChannel openChannel() {
+        return ObjectStore.channel(this);
+    }
+
+    /** Return a read-only buffer over the contents. */
+    public ByteBuffer asByteBuffer() {
+        return ObjectStore.map(this);
+    }
+
+    /** Return the Blob content as a byte array, read from the store. */
     public byte[] getContents() {
-        return _contents;
+        try (InputStream in = openStream()) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
     }
 
-    /** Return the Blob content as String type. */
+    /** Return the Blob content as String type, read from the store. */
     public String getContentsAsString() {
-        return _contentsAsString;
+        return new String(getContents(), StandardCharsets.UTF_8);
     }
 }
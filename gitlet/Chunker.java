@@ -0,0 +1,154 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/** Content-defined chunking of large files, in the style of FastCDC.
+ *  A gear-based rolling hash picks cut points from the file contents
+ *  themselves, so an insertion near the start of a file only changes
+ *  the chunks around it.  Each chunk is stored once under its SHA-1
+ *  in .gitlet/chunks, which deduplicates chunks across versions and
+ *  across files.
+ *  @author Ruize Xu
+ */
+class Chunker {
+
+    /** Files longer than this many bytes are stored as chunks. */
+    static final long THRESHOLD = 1 << 20;
+
+    /** Smallest chunk we ever cut, except at the end of a file. */
+    static final int MIN_SIZE = 16 * 1024;
+
+    /** Target chunk size. */
+    static final int AVG_SIZE = 64 * 1024;
+
+    /** Largest chunk we ever cut. */
+    static final int MAX_SIZE = 256 * 1024;
+
+    /** Mask used before AVG_SIZE; harder to match, so cuts are rarer. */
+    private static final long MASK_S = ((1L << 18) - 1) << 40;
+
+    /** Mask used after AVG_SIZE; easier to match, so cuts are likelier. */
+    private static final long MASK_L = ((1L << 14) - 1) << 40;
+
+    /** Number of chunks that may be hashed or written concurrently. */
+    private static final int IN_FLIGHT =
+        2 * Runtime.getRuntime().availableProcessors();
+
+    /** Random values mixed into the rolling hash, one per byte value.
+     *  Generated from a fixed seed so cut points are stable. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        long seed = 0x6769746c6574L;
+        for (int i = 0; i < GEAR.length; i += 1) {
+            seed += 0x9E3779B97F4A7C15L;
+            long z = seed;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    /** Return the length of the first chunk of the LEN bytes of BUF
+     *  starting at OFF. */
+    static int cut(byte[] buf, int off, int len) {
+        if (len <= MIN_SIZE) {
+            return len;
+        }
+        int n = Math.min(len, MAX_SIZE);
+        int normal = Math.min(n, AVG_SIZE);
+        long fp = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i += 1) {
+            fp = (fp << 1) + GEAR[buf[off + i] & 0xff];
+            if ((fp & MASK_S) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < n; i += 1) {
+            fp = (fp << 1) + GEAR[buf[off + i] & 0xff];
+            if ((fp & MASK_L) == 0) {
+                return i + 1;
+            }
+        }
+        return n;
+    }
+
+    /** Split FILE into chunks, storing each new chunk in the chunk
+     *  directory, and return the ids of its chunks in order. */
+    static List<String> store(File file) {
+        try (InputStream in = new BufferedInputStream(
+                 Files.newInputStream(file.toPath()))) {
+            return store(in);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Split the contents of IN into chunks, storing each new chunk in
+     *  the chunk directory, and return the ids of its chunks in order.
+     *  Chunks are hashed and written in parallel; at most IN_FLIGHT
+     *  chunks plus one read buffer are held in memory at a time. */
+    static List<String> store(InputStream in) {
+        File dir = ObjectStore.chunkDir();
+        dir.mkdirs();
+        ExecutorService pool = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors());
+        Semaphore slots = new Semaphore(IN_FLIGHT);
+        List<Future<String>> pending = new ArrayList<>();
+        try {
+            byte[] buf = new byte[MAX_SIZE];
+            int filled = 0;
+            while (true) {
+                filled += in.readNBytes(buf, filled, MAX_SIZE - filled);
+                if (filled == 0) {
+                    break;
+                }
+                int len = cut(buf, 0, filled);
+                byte[] chunk = Arrays.copyOf(buf, len);
+                System.arraycopy(buf, len, buf, 0, filled - len);
+                filled -= len;
+                slots.acquire();
+                pending.add(pool.submit(() -> {
+                    try {
+                        return writeChunk(dir, chunk);
+                    } finally {
+                        slots.release();
+                    }
+                }));
+            }
+            List<String> ids = new ArrayList<>(pending.size());
+            for (Future<String> id : pending) {
+                ids.add(id.get());
+            }
+            return ids;
+        } catch (IOException | ExecutionException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Store CHUNK in DIR, in the current WriteBatch, unless an
+     *  identical chunk is already there, and return its id. */
+    private static String writeChunk(File dir, byte[] chunk) {
+        String id = Utils.sha1(chunk);
+        WriteBatch.write(new File(dir, id), chunk);
+        return id;
+    }
+}
@@ -1,17 +1,22 @@
 package gitlet;
 
+import java.io.File;
 import java.io.Serializable;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 
 /** Class Commit for Gitlet.
  *  @author Ruize Xu
  */
 public class Commit implements Serializable {
 
+    /** Kept equal to the original class so existing repos still load. */
+    private static final long serialVersionUID = -57104372981511584L;
+
     /** The input message for the commit command. */
     private String _message;
 
@@ -33,6 +38,17 @@ public class Commit implements Serializable {
      */
     private HashMap<String, Blob> _blobs = new HashMap<>();
 
+    /** The id of the FileTree of the tracked files, which commits made
+     *  since trees were shared have instead of _blobs. */
+    private String _tree;
+
+    /** The tree of the tracked files, once read. */
+    private transient FileTree _files;
+
+    /** The shared .gitlet directory the tree is read from, if not the
+     *  current one. */
+    private transient File _dir;
+
     /** return message. */
     public String getMessage() {
         return _message;
@@ -58,9 +74,39 @@ public class Commit implements Serializable {
         return _parentid;
     }
 
-    /** return the tracked blobs of current Commit. */
-    public HashMap<String, Blob> getBlobs() {
-        return _blobs;
+    /** return the tracked blobs of current Commit, by name; null for
+     *  the initial commit. */
+    public Map<String, Blob> getBlobs() {
+        if (_tree == null) {
+            return _blobs;
+        }
+        if (_files == null) {
+            _files = FileTree.load(_dir == null ? ObjectStore.root() : _dir,
+                                   _tree);
+        }
+        return _files;
+    }
+
+    /** Return the id of the tree of the tracked files, or null if the
+     *  commit keeps them as a map. */
+    String getTreeId() {
+        return _tree;
+    }
+
+    /** Return true if this commit, read from the file named ID, has that
+     *  uid and, if it has a tree, its contents hash to it.  A commit
+     *  without a tree hashed the order of a HashMap, which reading it
+     *  back may change, and migrate rewrote such commits in place, so
+     *  only their uid is compared. */
+    boolean intact(String id) {
+        return id.equals(_uid)
+            && (_tree == null || generateHash().equals(_uid));
+    }
+
+    /** Read the tree of this commit from the shared .gitlet directory
+     *  DIR rather than the current one. */
+    void setDir(File dir) {
+        _dir = dir;
     }
 
     /**
@@ -105,28 +151,55 @@ public class Commit implements Serializable {
      * @param message String the input message of commit command
      * @param parentid String array contains all parent hashID
      * @param branch String the current branch of the commit
-     * @param blobs the tracked blobs of the commit
+     * @param files the tracked files of the commit
      */
     public Commit(String message, String[] parentid, String branch,
-                  HashMap<String, Blob> blobs) {
+                  FileTree files) {
+        this(message, parentid, branch, files, format(ZonedDateTime.now()));
+    }
+
+    /**
+     * The Commit constructor with a given TIMESTAMP, as produced by
+     * format(), for repositories built without the clock.
+     * @param message String the input message of commit command
+     * @param parentid String array contains all parent hashID
+     * @param branch String the current branch of the commit
+     * @param files the tracked files of the commit
+     * @param timestamp String the time the commit is said to be made
+     */
+    Commit(String message, String[] parentid, String branch,
+           FileTree files, String timestamp) {
         _message = message;
         _branch = branch;
         _parentid = parentid;
-        _blobs = blobs;
-        ZonedDateTime now = ZonedDateTime.now();
-        _timestamp = now.format(DateTimeFormatter.ofPattern
-                ("EEE MMM d HH:mm:ss yyyy xxxx", Locale.ENGLISH));
+        _blobs = null;
+        _files = files;
+        _tree = files.id();
+        _timestamp = timestamp;
         _uid = generateHash();
     }
 
     /**
-     * Hash generator using the method in Utils.sha1() method.
+     * Return TIME in the format of commit timestamps.
+     * @param time ZonedDateTime the time to format
+     * @return String the formatted time
+     */
+    static String format(ZonedDateTime time) {
+        return time.format(DateTimeFormatter.ofPattern
+                ("EEE MMM d HH:mm:ss yyyy xxxx", Locale.ENGLISH));
+    }
+
+    /**
+     * Hash generator using the method in Utils.sha1() method.  The
+     * files count by the id of their tree where there is one.
      * @return String hashID or we call it uid in Commit class
      */
     private String generateHash() {
         String blobToString;
         String parentToString = Arrays.toString(_parentid);
-        if (_blobs == null) {
+        if (_tree != null) {
+            blobToString = "tree " + _tree;
+        } else if (_blobs == null) {
             blobToString = "";
         } else {
             blobToString = _blobs.toString();
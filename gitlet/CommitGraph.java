@@ -0,0 +1,487 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/** The commit graph of a repository: every commit reachable from a
+ *  branch, numbered by position so that parents come before their
+ *  children, with the positions of its parents and a Bloom filter of
+ *  the paths it changed from its first parent.  Walks of the history
+ *  follow the parent positions without reading any commit, and a walk
+ *  limited to one path reads only the commits whose filter says they
+ *  may have changed it.
+ *
+ *  The graph lives in the file "commit-graph" of the shared .gitlet
+ *  directory.  It is a cache: Repo.save() adds the commits of new
+ *  branch heads before it writes the refs, and a reader that finds a
+ *  head missing, as it may in a repository written by an older Gitlet,
+ *  extends its copy in memory.  Commits never change, so the entries
+ *  already there never need rewriting.
+ *
+ *  The file holds, as big-endian ints: a magic number, the version and
+ *  the number of commits N; then the N 20-byte commit ids; the N first
+ *  parent positions, the N second parent positions (NONE if absent) and
+ *  the N end offsets of the filters; and last the filters themselves.
+ *  @author Ruize Xu
+ */
+class CommitGraph {
+
+    /** Name of the file holding the graph. */
+    static final String FILE = "commit-graph";
+
+    /** Position of an absent commit or parent. */
+    static final int NONE = -1;
+
+    /** Commits changing more paths than this get a filter that matches
+     *  every path, rather than one too large to be worth reading. */
+    static final int MAX_CHANGED = 512;
+
+    /** Bits of filter per changed path, which with HASHES hash functions
+     *  gives under one percent false positives. */
+    private static final int BITS_PER_PATH = 10;
+
+    /** Smallest size of a filter in bytes.  Tiny filters have too few
+     *  distinct positions for the hashes of similar names to differ. */
+    private static final int MIN_BYTES = 8;
+
+    /** Number of bits set per path. */
+    private static final int HASHES = 7;
+
+    /** Seeds of the two murmur3 hashes combined into HASHES hashes. */
+    private static final int SEED1 = 0x293ae76f, SEED2 = 0x7e646e2c;
+
+    /** First int of the file: "GGPH". */
+    private static final int MAGIC = 0x47475048;
+
+    /** Version of the file layout. */
+    private static final int VERSION = 1;
+
+    /** Bytes in a commit id. */
+    private static final int ID_BYTES = ObjectId.BYTES;
+
+    /** Filter of a commit that changed too many paths to list. */
+    private static final byte[] ALL_PATHS = {(byte) 0xff};
+
+    /** The shared .gitlet directory the graph belongs to. */
+    private final File _dir;
+
+    /** Number of commits in the graph. */
+    private int _size;
+
+    /** The commit ids, ID_BYTES bytes for each position. */
+    private byte[] _ids;
+
+    /** Position of the first parent at each position, or NONE. */
+    private int[] _parent1;
+
+    /** Position of the second parent at each position, or NONE. */
+    private int[] _parent2;
+
+    /** End offset in _filters of the filter at each position; it starts
+     *  where the one before it ends. */
+    private int[] _filterEnd;
+
+    /** The Bloom filters, one after another. */
+    private byte[] _filters;
+
+    /** Open-addressing hash table from commit id to position: each slot
+     *  holds a position plus one, or 0 if empty, and the id itself is
+     *  read from _ids, so the table takes four bytes a slot and no
+     *  objects.  Null until the first lookup. */
+    private int[] _table;
+
+    /** An empty graph for the shared .gitlet directory DIR. */
+    private CommitGraph(File dir) {
+        _dir = dir;
+        _ids = new byte[0];
+        _parent1 = new int[0];
+        _parent2 = new int[0];
+        _filterEnd = new int[0];
+        _filters = new byte[0];
+    }
+
+    /**
+     * Return the graph of the shared .gitlet directory DIR, empty if it
+     * has none yet.
+     * @param dir File the shared .gitlet directory
+     * @return CommitGraph the graph
+     */
+    static CommitGraph read(File dir) {
+        CommitGraph graph = new CommitGraph(dir);
+        File file = new File(dir, FILE);
+        if (!file.isFile()) {
+            return graph;
+        }
+        ByteBuffer in = ByteBuffer.wrap(Utils.readContents(file));
+        try {
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                return graph;
+            }
+            int n = in.getInt();
+            graph._ids = new byte[n * ID_BYTES];
+            in.get(graph._ids);
+            graph._parent1 = readInts(in, n);
+            graph._parent2 = readInts(in, n);
+            graph._filterEnd = readInts(in, n);
+            graph._filters = new byte[n == 0 ? 0 : graph._filterEnd[n - 1]];
+            in.get(graph._filters);
+            graph._size = n;
+        } catch (BufferUnderflowException excp) {
+            throw new IllegalArgumentException("Truncated commit graph");
+        }
+        return graph;
+    }
+
+    /** Return N ints read from IN, advancing it past them. */
+    private static int[] readInts(ByteBuffer in, int n) {
+        int[] result = new int[n];
+        in.asIntBuffer().get(result);
+        in.position(in.position() + 4 * n);
+        return result;
+    }
+
+    /** Write the graph back to its file, replacing it in one step. */
+    void write() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(_size);
+            out.write(_ids, 0, _size * ID_BYTES);
+            for (int[] ints : new int[][] {_parent1, _parent2, _filterEnd}) {
+                for (int p = 0; p < _size; p += 1) {
+                    out.writeInt(ints[p]);
+                }
+            }
+            out.write(_filters, 0, filterStart(_size));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Utils.replaceContents(new File(_dir, FILE), bytes.toByteArray());
+    }
+
+    /** Return the number of commits in the graph. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the position of the commit UID, or NONE if it is not in
+     *  the graph. */
+    int position(String uid) {
+        return position(ObjectId.fromHex(uid));
+    }
+
+    /** Return the position of the commit ID, or NONE if it is not in
+     *  the graph. */
+    int position(ObjectId id) {
+        int[] table = table();
+        int mask = table.length - 1;
+        for (int i = id.hashCode() & mask; table[i] != 0;
+             i = (i + 1) & mask) {
+            int p = table[i] - 1;
+            if (id.equalsAt(_ids, p * ID_BYTES)) {
+                return p;
+            }
+        }
+        return NONE;
+    }
+
+    /** Return the id of the commit at position P. */
+    String id(int p) {
+        return objectId(p).toHex();
+    }
+
+    /** Return the id of the commit at position P. */
+    ObjectId objectId(int p) {
+        return ObjectId.fromBytes(_ids, p * ID_BYTES);
+    }
+
+    /** Return the position table, building it if need be, with room for
+     *  one more commit at most half full. */
+    private int[] table() {
+        if (_table == null || 2 * (_size + 1) > _table.length) {
+            int capacity = Integer.highestOneBit(Math.max(16, 4 * _size));
+            _table = new int[capacity];
+            for (int p = 0; p < _size; p += 1) {
+                insert(p);
+            }
+        }
+        return _table;
+    }
+
+    /** Enter the commit at position P in _table, which has room. */
+    private void insert(int p) {
+        int mask = _table.length - 1;
+        int i = ObjectId.hashAt(_ids, p * ID_BYTES) & mask;
+        while (_table[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        _table[i] = p + 1;
+    }
+
+    /** Return the position of the first parent of the commit at P, or
+     *  NONE. */
+    int parent(int p) {
+        return _parent1[p];
+    }
+
+    /** Return the position of the second parent of the commit at P, or
+     *  NONE. */
+    int secondParent(int p) {
+        return _parent2[p];
+    }
+
+    /** Return the key of PATH for mayChange(): its two hashes. */
+    static long key(String path) {
+        byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+        return (long) murmur3(bytes, SEED1) << 32
+            | (murmur3(bytes, SEED2) & 0xffffffffL);
+    }
+
+    /** Return false if the commit at position P certainly did not change
+     *  the path whose key() is KEY from its first parent; true if it may
+     *  have. */
+    boolean mayChange(int p, long key) {
+        int start = filterStart(p);
+        int bits = (_filterEnd[p] - start) * 8;
+        if (bits == 0) {
+            return false;
+        }
+        int h1 = (int) (key >>> 32), h2 = (int) key;
+        for (int i = 0; i < HASHES; i += 1) {
+            int bit = bit(h1, h2, i, bits);
+            if ((_filters[start + bit / 8] & (1 << (bit % 8))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Add to the graph every commit reachable from TIPS that is not in
+     * it yet, reading commits with READER.  Parents are added before
+     * their children, without recursion, so histories of any depth can
+     * be added; only the parents and filter of each commit waiting for
+     * its parents are kept meanwhile.
+     * @param tips Collection of commit uids
+     * @param reader Function from uid to Commit
+     * @return boolean true if any commit was added
+     */
+    boolean update(Collection<String> tips,
+                   Function<String, Commit> reader) {
+        int before = _size;
+        Deque<String> stack = new ArrayDeque<String>();
+        for (String tip : tips) {
+            if (tip != null && position(tip) == NONE) {
+                stack.push(tip);
+            }
+        }
+        HashMap<String, String[]> parentsOf = new HashMap<>();
+        HashMap<String, byte[]> filterOf = new HashMap<>();
+        while (!stack.isEmpty()) {
+            String uid = stack.peek();
+            if (position(uid) != NONE) {
+                stack.pop();
+                continue;
+            }
+            if (!parentsOf.containsKey(uid)) {
+                Commit c = reader.apply(uid);
+                String[] parents = c.getAllParentID();
+                Map<String, Blob> old = parents == null ? null
+                    : reader.apply(parents[0]).getBlobs();
+                parentsOf.put(uid, parents);
+                filterOf.put(uid, filter(changedPaths(c.getBlobs(), old)));
+            }
+            String[] parents = parentsOf.get(uid);
+            boolean ready = true;
+            if (parents != null) {
+                for (String parent : parents) {
+                    if (position(parent) == NONE) {
+                        stack.push(parent);
+                        ready = false;
+                    }
+                }
+            }
+            if (ready) {
+                stack.pop();
+                add(uid, parents, filterOf.remove(uid));
+                parentsOf.remove(uid);
+            }
+        }
+        return _size > before;
+    }
+
+    /**
+     * Add the commit UID, whose PARENTS are in the graph, tracking the
+     * files NOW where its first parent tracked BEFORE, unless it is in
+     * the graph already.
+     * @param uid String the commit uid
+     * @param parents String array of parent uids, or null
+     * @param now Map the files the commit tracks, or null
+     * @param before Map the files its first parent tracks, or null
+     */
+    void add(String uid, String[] parents, Map<String, Blob> now,
+             Map<String, Blob> before) {
+        if (position(uid) == NONE) {
+            add(uid, parents, filter(changedPaths(now, before)));
+        }
+    }
+
+    /** Add the commit UID, whose PARENTS are in the graph and whose
+     *  changed-path filter is FILTER. */
+    private void add(String uid, String[] parents, byte[] filter) {
+        if (_size == _parent1.length) {
+            int n = Math.max(16, 2 * _size);
+            _ids = Arrays.copyOf(_ids, n * ID_BYTES);
+            _parent1 = Arrays.copyOf(_parent1, n);
+            _parent2 = Arrays.copyOf(_parent2, n);
+            _filterEnd = Arrays.copyOf(_filterEnd, n);
+        }
+        int p = _size;
+        table();
+        ObjectId.fromHex(uid).copyTo(_ids, p * ID_BYTES);
+        _parent1[p] = parents == null ? NONE : position(parents[0]);
+        _parent2[p] = parents == null || parents.length < 2
+            ? NONE : position(parents[1]);
+        int start = filterStart(p);
+        if (start + filter.length > _filters.length) {
+            _filters = Arrays.copyOf(_filters,
+                                     Math.max(2 * _filters.length + 64,
+                                              start + filter.length));
+        }
+        System.arraycopy(filter, 0, _filters, start, filter.length);
+        _filterEnd[p] = start + filter.length;
+        insert(p);
+        _size += 1;
+    }
+
+    /** Return the offset in _filters of the filter at position P. */
+    private int filterStart(int p) {
+        return p == 0 ? 0 : _filterEnd[p - 1];
+    }
+
+    /**
+     * Return the names of the files whose contents differ between the
+     * tracked files NOW of a commit and BEFORE of its first parent;
+     * either is null if no files are tracked.  Two trees are compared
+     * node by node, passing over the subtrees they share.
+     * @param now Map the files of the commit, by name
+     * @param before Map the files of its first parent, by name
+     * @return Set of file names
+     */
+    static Set<String> changedPaths(Map<String, Blob> now,
+                                    Map<String, Blob> before) {
+        if (now instanceof FileTree && before instanceof FileTree) {
+            return ((FileTree) now).changedNames((FileTree) before);
+        }
+        Set<String> changed = new HashSet<String>();
+        if (now != null) {
+            for (Blob blob : now.values()) {
+                Blob old = before == null ? null : before.get(blob.getName());
+                if (old == null
+                    || !old.getHashID().equals(blob.getHashID())) {
+                    changed.add(blob.getName());
+                }
+            }
+        }
+        if (before != null) {
+            for (String name : before.keySet()) {
+                if (now == null || !now.containsKey(name)) {
+                    changed.add(name);
+                }
+            }
+        }
+        return changed;
+    }
+
+    /** Return the Bloom filter of PATHS. */
+    static byte[] filter(Collection<String> paths) {
+        if (paths.size() > MAX_CHANGED) {
+            return ALL_PATHS;
+        }
+        if (paths.isEmpty()) {
+            return new byte[0];
+        }
+        int size = (paths.size() * BITS_PER_PATH + 7) / 8;
+        byte[] filter = new byte[Math.max(MIN_BYTES, size)];
+        int bits = filter.length * 8;
+        for (String path : paths) {
+            byte[] key = path.getBytes(StandardCharsets.UTF_8);
+            int h1 = murmur3(key, SEED1), h2 = murmur3(key, SEED2);
+            for (int i = 0; i < HASHES; i += 1) {
+                int bit = bit(h1, h2, i, bits);
+                filter[bit / 8] |= (byte) (1 << (bit % 8));
+            }
+        }
+        return filter;
+    }
+
+    /** Return the bit of a filter of BITS bits set by the Ith hash of a
+     *  path whose murmur3 hashes are H1 and H2.  The combination is mixed
+     *  again, as otherwise the bits of a small filter depend only on the
+     *  low bits of H1 and H2, and few paths would have distinct sets. */
+    private static int bit(int h1, int h2, int i, int bits) {
+        return Integer.remainderUnsigned(mix(h1 + i * h2), bits);
+    }
+
+    /** Return H with its bits mixed by the murmur3 finalizer. */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /** Return the 32-bit murmur3 hash of DATA with SEED. */
+    static int murmur3(byte[] data, int seed) {
+        final int c1 = 0xcc9e2d51, c2 = 0x1b873593;
+        int h = seed;
+        int blocks = data.length / 4;
+        for (int i = 0; i < blocks; i += 1) {
+            int k = (data[4 * i] & 0xff) | (data[4 * i + 1] & 0xff) << 8
+                | (data[4 * i + 2] & 0xff) << 16 | (data[4 * i + 3] << 24);
+            k *= c1;
+            k = Integer.rotateLeft(k, 15);
+            k *= c2;
+            h ^= k;
+            h = Integer.rotateLeft(h, 13);
+            h = h * 5 + 0xe6546b64;
+        }
+        int k = 0;
+        int tail = blocks * 4;
+        switch (data.length & 3) {
+        case 3:
+            k ^= (data[tail + 2] & 0xff) << 16;
+            /* fall through */
+        case 2:
+            k ^= (data[tail + 1] & 0xff) << 8;
+            /* fall through */
+        case 1:
+            k ^= data[tail] & 0xff;
+            k *= c1;
+            k = Integer.rotateLeft(k, 15);
+            k *= c2;
+            h ^= k;
+            break;
+        default:
+            break;
+        }
+        return mix(h ^ data.length);
+    }
+}
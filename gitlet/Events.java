@@ -0,0 +1,180 @@
+package gitlet;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** The Java Flight Recorder events of Gitlet, all under the category
+ *  "Gitlet".  Run a command as java -XX:StartFlightRecording=filename=
+ *  gitlet.jfr gitlet.Main ..., then "jfr print --categories Gitlet
+ *  gitlet.jfr" or JDK Mission Control shows where the time went.
+ *
+ *  Each event is timed from begin() to end() and carries the id of the
+ *  object concerned and a byte count.  Loading the event classes slows
+ *  the start of every run, so callers only see them as an Object, and
+ *  they are loaded only if a recording was started with the JVM.
+ *  @author Ruize Xu
+ */
+final class Events {
+
+    /** Kind of event: reading and deserializing an object. */
+    static final int DECODE = 0;
+
+    /** Kind of event: writing a file. */
+    static final int WRITE = 1;
+
+    /** Kind of event: copying a blob out to a working file. */
+    static final int BLOB_READ = 2;
+
+    /** Kind of event: computing a SHA-1 hash. */
+    static final int HASH = 3;
+
+    /** Kind of event: comparing the working directory with a commit. */
+    static final int DIRECTORY_SCAN = 4;
+
+    /** Kind of event: finding the split point of two branches. */
+    static final int MERGE_BASE = 5;
+
+    /** Not instantiable. */
+    private Events() {
+    }
+
+    /** Return true if a flight recording is running. */
+    static boolean recording() {
+        return System.getProperty("jdk.jfr.repository") != null;
+    }
+
+    /** Start timing an event of kind KIND, returning it, or null if no
+     *  recording is running. */
+    static Object begin(int kind) {
+        return recording() ? Recorder.begin(kind) : null;
+    }
+
+    /** End EVENT, as returned by begin(), recording it as concerning
+     *  object ID and BYTES bytes.  Does nothing if EVENT is null. */
+    static void end(Object event, String id, long bytes) {
+        end(event, id, bytes, 0);
+    }
+
+    /** End EVENT, as returned by begin(), recording it as concerning
+     *  object ID, BYTES bytes and COUNT files or commits.  Does nothing
+     *  if EVENT is null. */
+    static void end(Object event, String id, long bytes, int count) {
+        if (event != null) {
+            Recorder.end((ObjectEvent) event, id, bytes, count);
+        }
+    }
+
+    /** Creates and commits the events, once a recording is running. */
+    private static final class Recorder {
+
+        /** Return a started event of kind KIND. */
+        static ObjectEvent begin(int kind) {
+            ObjectEvent event;
+            switch (kind) {
+            case DECODE:
+                event = new Decode();
+                break;
+            case WRITE:
+                event = new Write();
+                break;
+            case BLOB_READ:
+                event = new BlobRead();
+                break;
+            case HASH:
+                event = new Hash();
+                break;
+            case DIRECTORY_SCAN:
+                event = new DirectoryScan();
+                break;
+            default:
+                event = new MergeBase();
+                break;
+            }
+            event.begin();
+            return event;
+        }
+
+        /** End EVENT and commit it, if it is to be recorded, with ID,
+         *  BYTES and COUNT. */
+        static void end(ObjectEvent event, String id, long bytes,
+                        int count) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.objectId = id;
+                event.bytes = bytes;
+                event.count = count;
+                event.commit();
+            }
+        }
+    }
+
+    /** An event about one stored object. */
+    abstract static class ObjectEvent extends Event {
+        /** Id of the object, or name of the file, concerned. */
+        @Label("Object Id")
+        String objectId;
+
+        /** Bytes read, written or hashed. */
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        /** Files or commits looked at, where that applies. */
+        @Label("Count")
+        int count;
+    }
+
+    /** Reading and deserializing a commit or other object. */
+    @Name("gitlet.Decode")
+    @Label("Object Decode")
+    @Category("Gitlet")
+    @Description("Read and deserialize a commit, the refs or the repo")
+    static final class Decode extends ObjectEvent {
+    }
+
+    /** Writing a file, such as a commit, blob or chunk. */
+    @Name("gitlet.Write")
+    @Label("Object Write")
+    @Category("Gitlet")
+    @Description("Write a commit, blob, chunk or working file")
+    static final class Write extends ObjectEvent {
+    }
+
+    /** Copying a blob out of the store to a working file. */
+    @Name("gitlet.BlobRead")
+    @Label("Blob Read")
+    @Category("Gitlet")
+    @Description("Copy a stored blob to a working file")
+    static final class BlobRead extends ObjectEvent {
+    }
+
+    /** Computing a SHA-1 hash. */
+    @Name("gitlet.Hash")
+    @Label("Hash")
+    @Category("Gitlet")
+    @Description("Compute the SHA-1 id of some bytes or a file")
+    static final class Hash extends ObjectEvent {
+    }
+
+    /** Comparing the working directory with a commit; the count is of
+     *  working files. */
+    @Name("gitlet.DirectoryScan")
+    @Label("Directory Scan")
+    @Category("Gitlet")
+    @Description("Compare the working directory with a commit")
+    static final class DirectoryScan extends ObjectEvent {
+    }
+
+    /** Finding the split point of two branches; the count is of commits
+     *  visited. */
+    @Name("gitlet.MergeBase")
+    @Label("Merge Base Search")
+    @Category("Gitlet")
+    @Description("Find the latest common ancestor of two commits")
+    static final class MergeBase extends ObjectEvent {
+    }
+}
@@ -0,0 +1,743 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/** The files a commit tracks, by name, as an immutable map that shares
+ *  structure: a hash trie over the names (a HAMT) whose interior nodes
+ *  pick a child by BITS bits of the hash of a name, level by level, and
+ *  whose leaves hold up to MAX_LEAF files sorted by name.  with() and
+ *  without() return a new tree that copies only the nodes on the path
+ *  to the file changed and shares every other node with this one, so a
+ *  commit's tree differs from its parent's by a few nodes, not by a
+ *  copy of every file.
+ *
+ *  A node is stored on its own, in .gitlet/trees under the SHA-1 hash
+ *  of its serialized form, and an interior node holds the ids of its
+ *  children, read only when looked into.  A tree's shape depends only
+ *  on the files in it, so equal trees have equal root ids and an
+ *  unchanged subtree keeps its id.  Nodes read from disk are kept by id
+ *  for as long as any tree in memory holds them, so the trees of many
+ *  commits share the nodes they have in common in memory too.
+ *  @author Ruize Xu
+ */
+final class FileTree extends AbstractMap<String, Blob> {
+
+    /** Name of the directory of the shared .gitlet directory holding
+     *  the nodes. */
+    static final String DIR = "trees";
+
+    /** Name of the file of the shared .gitlet directory that maps the id
+     *  of each leaf migrate rewrote in place to the hash of what it holds
+     *  now. */
+    static final String REWRITTEN = "rewritten-trees";
+
+    /** Most files in a leaf; a leaf that would hold more is split. */
+    static final int MAX_LEAF = 64;
+
+    /** Bits of the hash of a name that pick the child at each level. */
+    private static final int BITS = 5;
+
+    /** Children an interior node may have. */
+    private static final int FANOUT = 1 << BITS;
+
+    /** Level of the deepest nodes, where all 32 bits of the hash are
+     *  used up; leaves there hold files whose hashes are equal, however
+     *  many. */
+    private static final int MAX_DEPTH = (Integer.SIZE + BITS - 1) / BITS;
+
+    /** Orders files by name. */
+    private static final Comparator<Blob> BY_NAME =
+        Comparator.comparing(Blob::getName);
+
+    /** The tree with no files. */
+    static final FileTree EMPTY = new FileTree(new Leaf(new Blob[0]));
+
+    /** Nodes in memory by id, for as long as something else holds them.
+     *  Guarded by itself. */
+    private static final HashMap<String, NodeRef> NODES = new HashMap<>();
+
+    /** Where the references of collected nodes are queued, for removal
+     *  from NODES. */
+    private static final ReferenceQueue<Node> COLLECTED =
+        new ReferenceQueue<>();
+
+    /** The root node. */
+    private final Node _root;
+
+    /** The tree whose root is ROOT. */
+    private FileTree(Node root) {
+        _root = root;
+    }
+
+    /** Return the tree of the files in FILES, a map from name to Blob,
+     *  which may be null for no files. */
+    static FileTree of(Map<String, Blob> files) {
+        if (files instanceof FileTree) {
+            return (FileTree) files;
+        }
+        if (files == null || files.isEmpty()) {
+            return EMPTY;
+        }
+        List<Blob> blobs = new ArrayList<>(files.values());
+        blobs.sort(BY_NAME);
+        return new FileTree(build(blobs, 0));
+    }
+
+    /** Return the tree stored in the shared .gitlet directory DIR whose
+     *  root has id ID. */
+    static FileTree load(File dir, String id) {
+        return new FileTree(node(dir, id));
+    }
+
+    /** Return this tree with BLOB as its file of that name, replacing
+     *  any it had. */
+    FileTree with(Blob blob) {
+        Node root = _root.with(blob, hash(blob.getName()), 0);
+        return root == _root ? this : new FileTree(root);
+    }
+
+    /** Return this tree without the file NAME. */
+    FileTree without(String name) {
+        Node root = _root.without(name, hash(name), 0);
+        return root == _root ? this : new FileTree(root);
+    }
+
+    /** Return the id of the root, by which the tree is stored. */
+    String id() {
+        return _root.id();
+    }
+
+    /** Store every node of the tree not stored yet, each before any
+     *  node that refers to it, in the tree directory of the current
+     *  .gitlet directory. */
+    void store() {
+        File dir = ObjectStore.treeDir();
+        if (!dir.isDirectory()) {
+            dir.mkdirs();
+        }
+        store(dir, _root);
+    }
+
+    /** Return the names of the files that differ between this tree and
+     *  BEFORE: added, removed or changed.  Subtrees with the same id
+     *  are passed over without being read. */
+    Set<String> changedNames(FileTree before) {
+        Set<String> changed = new HashSet<>();
+        diff(_root, before._root, changed);
+        return changed;
+    }
+
+    /** Apply ACTION to the id of every node of the tree stored in the
+     *  shared .gitlet directory DIR whose root has id ID, each after
+     *  those it refers to, and FILES to every file of each leaf ACTION
+     *  is applied to, passing over the nodes below any id for which
+     *  SKIP is true. */
+    static void forEachNode(File dir, String id,
+                            Predicate<String> skip,
+                            Consumer<String> action,
+                            Consumer<Blob> files) {
+        if (skip.test(id)) {
+            return;
+        }
+        Node node = node(dir, id);
+        if (node instanceof Branch) {
+            Branch branch = (Branch) node;
+            for (int i = 0; i < branch._childIds.length; i += 1) {
+                forEachNode(dir, branch._childIds[i], skip, action, files);
+            }
+        } else {
+            for (Blob blob : ((Leaf) node)._blobs) {
+                files.accept(blob);
+            }
+        }
+        action.accept(id);
+    }
+
+    /** Pass to CHILDREN the ids of the children of the node stored in
+     *  FILE, or to FILES its files if it is a leaf.  Return false,
+     *  passing nothing, if the contents of FILE hash neither to its name
+     *  nor to REWRITTEN, the hash migrate recorded for it, or null;
+     *  throw IllegalArgumentException if they are not a node. */
+    static boolean readNode(File file, String rewritten,
+                            Consumer<String> children,
+                            Consumer<Blob> files) {
+        String hash = Utils.sha1File(file);
+        if (!hash.equals(file.getName()) && !hash.equals(rewritten)) {
+            return false;
+        }
+        Node node = Utils.readObject(file, Node.class);
+        if (node instanceof Branch) {
+            for (String id : ((Branch) node)._childIds) {
+                children.accept(id);
+            }
+        } else {
+            for (Blob blob : ((Leaf) node)._blobs) {
+                files.accept(blob);
+            }
+        }
+        return true;
+    }
+
+    /** Apply CHANGE to every file of every leaf stored in the shared
+     *  .gitlet directory DIR, and store each leaf again in place, as
+     *  migrate does for commits: the ids of nodes do not change, as the
+     *  ids of the commits naming them would have to.  The hash of each
+     *  leaf's new contents is recorded in REWRITTEN, so that fsck can
+     *  still tell a damaged leaf from a rewritten one. */
+    static void rewriteLeaves(File dir, Consumer<Blob> change) {
+        List<String> ids = Utils.plainFilenamesIn(new File(dir, DIR));
+        if (ids == null) {
+            return;
+        }
+        HashMap<String, String> rewritten = rewritten(dir);
+        for (String id : ids) {
+            File file = new File(new File(dir, DIR), id);
+            Node node = Utils.readObject(file, Node.class);
+            if (node instanceof Leaf) {
+                for (Blob blob : ((Leaf) node)._blobs) {
+                    change.accept(blob);
+                }
+                byte[] contents = Utils.serialize(node);
+                Utils.replaceContents(file, contents);
+                rewritten.put(id, Utils.sha1(contents));
+            }
+        }
+        if (!rewritten.isEmpty()) {
+            Utils.replaceObject(new File(dir, REWRITTEN), rewritten);
+        }
+        synchronized (NODES) {
+            NODES.clear();
+        }
+    }
+
+    /** Return the map from the id of each leaf migrate rewrote in the
+     *  shared .gitlet directory DIR to the hash of its contents, which
+     *  is empty if there are none. */
+    @SuppressWarnings("unchecked")
+    static HashMap<String, String> rewritten(File dir) {
+        File file = new File(dir, REWRITTEN);
+        if (!file.isFile()) {
+            return new HashMap<>();
+        }
+        return Utils.readObject(file, HashMap.class);
+    }
+
+    /** Add to the leaves recorded as rewritten in the shared .gitlet
+     *  directory TO those recorded in FROM, whose nodes TO was given. */
+    static void copyRewritten(File from, File to) {
+        HashMap<String, String> theirs = rewritten(from);
+        if (theirs.isEmpty()) {
+            return;
+        }
+        HashMap<String, String> ours = rewritten(to);
+        if (!ours.entrySet().containsAll(theirs.entrySet())) {
+            ours.putAll(theirs);
+            Utils.replaceObject(new File(to, REWRITTEN), ours);
+        }
+    }
+
+    @Override
+    public int size() {
+        return _root.size();
+    }
+
+    @Override
+    public Blob get(Object name) {
+        if (!(name instanceof String)) {
+            return null;
+        }
+        return _root.get((String) name, hash((String) name), 0);
+    }
+
+    @Override
+    public boolean containsKey(Object name) {
+        return get(name) != null;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Blob>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Blob>>() {
+            @Override
+            public int size() {
+                return _root.size();
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, Blob>> iterator() {
+                List<Map.Entry<String, Blob>> entries =
+                    new ArrayList<>(_root.size());
+                _root.forEach(blob -> entries.add(
+                    new AbstractMap.SimpleImmutableEntry<>(blob.getName(),
+                                                           blob)));
+                return Collections.unmodifiableList(entries).iterator();
+            }
+        };
+    }
+
+    /** Return the hash of the file name NAME, mixed so that names that
+     *  differ only near the end still spread over the children. */
+    private static int hash(String name) {
+        int h = name.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ h >>> 16;
+    }
+
+    /** Return the child of a node at level DEPTH on the path of HASH. */
+    private static int slot(int hash, int depth) {
+        return (hash >>> (BITS * depth)) & (FANOUT - 1);
+    }
+
+    /** Return the node at level DEPTH holding BLOBS, sorted by name: a
+     *  leaf if they fit in one, and otherwise an interior node. */
+    private static Node build(List<Blob> blobs, int depth) {
+        if (blobs.size() <= MAX_LEAF || depth == MAX_DEPTH) {
+            return new Leaf(blobs.toArray(new Blob[blobs.size()]));
+        }
+        List<List<Blob>> parts = new ArrayList<>(FANOUT);
+        for (int i = 0; i < FANOUT; i += 1) {
+            parts.add(new ArrayList<Blob>());
+        }
+        for (Blob blob : blobs) {
+            parts.get(slot(hash(blob.getName()), depth)).add(blob);
+        }
+        int bitmap = 0;
+        List<Node> children = new ArrayList<>();
+        for (int i = 0; i < FANOUT; i += 1) {
+            if (!parts.get(i).isEmpty()) {
+                bitmap |= 1 << i;
+                children.add(build(parts.get(i), depth + 1));
+            }
+        }
+        return new Branch(bitmap, children.toArray(new Node[0]),
+                          blobs.size());
+    }
+
+    /** Return the node with id ID of the shared .gitlet directory DIR,
+     *  the one in memory if there is one. */
+    private static Node node(File dir, String id) {
+        synchronized (NODES) {
+            NodeRef ref = NODES.get(id);
+            Node node = ref == null ? null : ref.get();
+            if (node != null) {
+                return node;
+            }
+        }
+        Node node = Utils.readObject(new File(new File(dir, DIR), id),
+                                     Node.class);
+        node._id = id;
+        if (node instanceof Branch) {
+            ((Branch) node)._dir = dir;
+        }
+        return intern(node);
+    }
+
+    /** Return the node in memory with the id of NODE, which becomes it
+     *  if there is none. */
+    private static Node intern(Node node) {
+        synchronized (NODES) {
+            for (NodeRef ref = (NodeRef) COLLECTED.poll(); ref != null;
+                 ref = (NodeRef) COLLECTED.poll()) {
+                if (NODES.get(ref._key) == ref) {
+                    NODES.remove(ref._key);
+                }
+            }
+            NodeRef ref = NODES.get(node._id);
+            Node old = ref == null ? null : ref.get();
+            if (old != null) {
+                return old;
+            }
+            NODES.put(node._id, new NodeRef(node));
+            return node;
+        }
+    }
+
+    /** Store NODE, and before it those of its children not stored
+     *  yet, in the tree directory DIR. */
+    private static void store(File dir, Node node) {
+        if (node._stored) {
+            return;
+        }
+        File file = new File(dir, node.id());
+        if (!WriteBatch.exists(file)) {
+            if (node instanceof Branch) {
+                Branch branch = (Branch) node;
+                if (branch._children != null) {
+                    for (Node child : branch._children) {
+                        if (child != null) {
+                            store(dir, child);
+                        }
+                    }
+                }
+            }
+            WriteBatch.write(file, Utils.serialize(node));
+        }
+        node._stored = true;
+        intern(node);
+    }
+
+    /** Add to CHANGED the names of the files that differ between the
+     *  nodes NOW and BEFORE, at the same level. */
+    private static void diff(Node now, Node before, Set<String> changed) {
+        if (now == before || now._id != null && now._id.equals(before._id)) {
+            return;
+        }
+        if (now instanceof Branch && before instanceof Branch) {
+            Branch a = (Branch) now, b = (Branch) before;
+            for (int i = 0; i < FANOUT; i += 1) {
+                int bit = 1 << i;
+                if ((a._bitmap & bit) == 0 && (b._bitmap & bit) == 0) {
+                    continue;
+                }
+                if ((a._bitmap & bit) == 0) {
+                    b.child(b.index(bit)).forEach(
+                        blob -> changed.add(blob.getName()));
+                } else if ((b._bitmap & bit) == 0) {
+                    a.child(a.index(bit)).forEach(
+                        blob -> changed.add(blob.getName()));
+                } else {
+                    String idA = a.childId(a.index(bit));
+                    if (idA == null || !idA.equals(b.childId(b.index(bit)))) {
+                        diff(a.child(a.index(bit)), b.child(b.index(bit)),
+                             changed);
+                    }
+                }
+            }
+            return;
+        }
+        HashMap<String, Blob> old = new HashMap<>();
+        before.forEach(blob -> old.put(blob.getName(), blob));
+        now.forEach(blob -> {
+            Blob was = old.remove(blob.getName());
+            if (was == null || !was.getHashID().equals(blob.getHashID())) {
+                changed.add(blob.getName());
+            }
+        });
+        changed.addAll(old.keySet());
+    }
+
+    /** A node of the trie. */
+    private abstract static class Node implements Serializable {
+
+        /** The id, once known. */
+        private transient String _id;
+
+        /** True once the node is known to be stored. */
+        private transient boolean _stored;
+
+        /** Return the id of the node, the hash of its serialized form. */
+        String id() {
+            if (_id == null) {
+                _id = Utils.sha1(Utils.serialize(this));
+            }
+            return _id;
+        }
+
+        /** Return the number of files below the node. */
+        abstract int size();
+
+        /** Return the file NAME, whose hash is HASH, below this node at
+         *  level DEPTH, or null. */
+        abstract Blob get(String name, int hash, int depth);
+
+        /** Return this node at level DEPTH with BLOB, whose name has
+         *  hash HASH; this node itself if it has that BLOB already. */
+        abstract Node with(Blob blob, int hash, int depth);
+
+        /** Return this node at level DEPTH without the file NAME, whose
+         *  hash is HASH; this node itself if it lacks NAME. */
+        abstract Node without(String name, int hash, int depth);
+
+        /** Apply ACTION to every file below the node. */
+        abstract void forEach(Consumer<Blob> action);
+    }
+
+    /** A node holding files, sorted by name. */
+    private static final class Leaf extends Node {
+
+        /** Serialized leaves are part of the repository format. */
+        private static final long serialVersionUID = 1L;
+
+        /** The files, sorted by name. */
+        private final Blob[] _blobs;
+
+        /** The leaf holding BLOBS, sorted by name. */
+        Leaf(Blob[] blobs) {
+            _blobs = blobs;
+        }
+
+        @Override
+        int size() {
+            return _blobs.length;
+        }
+
+        /** Return the index of the file NAME, or -(insertion point + 1)
+         *  if there is none. */
+        private int find(String name) {
+            int lo = 0, hi = _blobs.length - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int c = _blobs[mid].getName().compareTo(name);
+                if (c < 0) {
+                    lo = mid + 1;
+                } else if (c > 0) {
+                    hi = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(lo + 1);
+        }
+
+        @Override
+        Blob get(String name, int hash, int depth) {
+            int i = find(name);
+            return i < 0 ? null : _blobs[i];
+        }
+
+        @Override
+        Node with(Blob blob, int hash, int depth) {
+            int i = find(blob.getName());
+            if (i >= 0) {
+                if (_blobs[i] == blob) {
+                    return this;
+                }
+                Blob[] blobs = _blobs.clone();
+                blobs[i] = blob;
+                return new Leaf(blobs);
+            }
+            i = -(i + 1);
+            Blob[] blobs = new Blob[_blobs.length + 1];
+            System.arraycopy(_blobs, 0, blobs, 0, i);
+            blobs[i] = blob;
+            System.arraycopy(_blobs, i, blobs, i + 1, _blobs.length - i);
+            if (blobs.length > MAX_LEAF && depth < MAX_DEPTH) {
+                return build(Arrays.asList(blobs), depth);
+            }
+            return new Leaf(blobs);
+        }
+
+        @Override
+        Node without(String name, int hash, int depth) {
+            int i = find(name);
+            if (i < 0) {
+                return this;
+            }
+            Blob[] blobs = new Blob[_blobs.length - 1];
+            System.arraycopy(_blobs, 0, blobs, 0, i);
+            System.arraycopy(_blobs, i + 1, blobs, i, blobs.length - i);
+            return new Leaf(blobs);
+        }
+
+        @Override
+        void forEach(Consumer<Blob> action) {
+            for (Blob blob : _blobs) {
+                action.accept(blob);
+            }
+        }
+    }
+
+    /** An interior node, whose children each hold the files whose
+     *  names hash to one value of the bits of its level. */
+    private static final class Branch extends Node {
+
+        /** Serialized interior nodes are part of the repository
+         *  format. */
+        private static final long serialVersionUID = 1L;
+
+        /** Bit I is set if there is a child for bits I. */
+        private final int _bitmap;
+
+        /** The ids of the children, in order of their bits; an entry is
+         *  null until the child's id is known. */
+        private final String[] _childIds;
+
+        /** Number of files below the node. */
+        private final int _size;
+
+        /** The children, in order of their bits, where in memory. */
+        private transient Node[] _children;
+
+        /** The shared .gitlet directory the children are read from. */
+        private transient File _dir;
+
+        /** The node whose children, for the bits set in BITMAP, are
+         *  CHILDREN, holding SIZE files in all. */
+        Branch(int bitmap, Node[] children, int size) {
+            this(bitmap, new String[children.length], children, size);
+        }
+
+        /** The node whose children, for the bits set in BITMAP, have
+         *  the ids IDS where known and are CHILDREN where in memory,
+         *  holding SIZE files in all. */
+        private Branch(int bitmap, String[] ids, Node[] children,
+                       int size) {
+            _bitmap = bitmap;
+            _childIds = ids;
+            _children = children;
+            _size = size;
+        }
+
+        @Override
+        String id() {
+            for (int i = 0; i < _childIds.length; i += 1) {
+                if (_childIds[i] == null) {
+                    _childIds[i] = _children[i].id();
+                }
+            }
+            return super.id();
+        }
+
+        @Override
+        int size() {
+            return _size;
+        }
+
+        /** Return the index among the children of the one for BIT. */
+        int index(int bit) {
+            return Integer.bitCount(_bitmap & (bit - 1));
+        }
+
+        /** Return the id of child I, or null if not yet known. */
+        String childId(int i) {
+            if (_childIds[i] != null) {
+                return _childIds[i];
+            }
+            return _children == null || _children[i] == null ? null
+                : _children[i]._id;
+        }
+
+        /** Return child I, reading it if need be. */
+        Node child(int i) {
+            Node[] children = _children;
+            if (children == null) {
+                children = new Node[_childIds.length];
+                _children = children;
+            }
+            if (children[i] == null) {
+                children[i] = node(_dir, _childIds[i]);
+            }
+            return children[i];
+        }
+
+        @Override
+        Blob get(String name, int hash, int depth) {
+            int bit = 1 << slot(hash, depth);
+            if ((_bitmap & bit) == 0) {
+                return null;
+            }
+            return child(index(bit)).get(name, hash, depth + 1);
+        }
+
+        @Override
+        Node with(Blob blob, int hash, int depth) {
+            int bit = 1 << slot(hash, depth);
+            int i = index(bit);
+            if ((_bitmap & bit) == 0) {
+                return derive(_bitmap | bit, i, 1,
+                              new Leaf(new Blob[] { blob }), _size + 1);
+            }
+            Node old = child(i);
+            Node child = old.with(blob, hash, depth + 1);
+            if (child == old) {
+                return this;
+            }
+            return derive(_bitmap, i, 0, child,
+                          _size - old.size() + child.size());
+        }
+
+        @Override
+        Node without(String name, int hash, int depth) {
+            int bit = 1 << slot(hash, depth);
+            if ((_bitmap & bit) == 0) {
+                return this;
+            }
+            int i = index(bit);
+            Node old = child(i);
+            Node child = old.without(name, hash, depth + 1);
+            if (child == old) {
+                return this;
+            }
+            int size = _size - 1;
+            if (size <= MAX_LEAF) {
+                List<Blob> blobs = new ArrayList<>(size);
+                for (int j = 0; j < _childIds.length; j += 1) {
+                    (j == i ? child : child(j)).forEach(blobs::add);
+                }
+                blobs.sort(BY_NAME);
+                return new Leaf(blobs.toArray(new Blob[size]));
+            }
+            if (child.size() == 0) {
+                return derive(_bitmap & ~bit, i, -1, null, size);
+            }
+            return derive(_bitmap, i, 0, child, size);
+        }
+
+        /** Return the node with the children of this one for the bits
+         *  set in BITMAP, holding SIZE files, where child I is replaced
+         *  by CHILD if GROWTH is 0, CHILD is inserted before child I if
+         *  GROWTH is 1, and child I is dropped if it is -1.  The other
+         *  children are shared, read or not. */
+        private Branch derive(int bitmap, int i, int growth, Node child,
+                              int size) {
+            int n = _childIds.length + growth;
+            String[] ids = new String[n];
+            Node[] children = new Node[n];
+            for (int j = 0, k = 0; j < n; j += 1) {
+                if (j == i && growth >= 0) {
+                    children[j] = child;
+                    k += 1 - growth;
+                    continue;
+                }
+                if (j == i) {
+                    k += 1;
+                }
+                ids[j] = childId(k);
+                children[j] = _children == null ? null : _children[k];
+                k += 1;
+            }
+            Branch result = new Branch(bitmap, ids, children, size);
+            result._dir = _dir;
+            return result;
+        }
+
+        @Override
+        void forEach(Consumer<Blob> action) {
+            for (int i = 0; i < _childIds.length; i += 1) {
+                child(i).forEach(action);
+            }
+        }
+    }
+
+    /** A weak reference to a node in NODES, knowing its key. */
+    private static final class NodeRef extends WeakReference<Node> {
+
+        /** The id of the node. */
+        private final String _key;
+
+        /** A reference to NODE, queued on COLLECTED once it goes. */
+        NodeRef(Node node) {
+            super(node, COLLECTED);
+            _key = node._id;
+        }
+    }
+}
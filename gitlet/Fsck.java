@@ -0,0 +1,240 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** Checks the objects of a shared .gitlet directory.  First every
+ *  stored commit, tree node, whole blob and chunk is read and hashed
+ *  again, on a ForkJoinPool with one thread per processor that splits
+ *  the list of files until each task has a few; what each intact object
+ *  refers to is kept.  Then, in memory, the objects are walked from the
+ *  branches and the staged files: an object that is reached or referred
+ *  to but not stored is missing, and a stored object that no branch
+ *  reaches and nothing refers to is dangling.  Hashing is nearly all
+ *  the work, so the time falls with the number of processors.
+ *
+ *  Objects are named by kind and id, as "blob 3f2a...".  A chunked blob
+ *  is not a file of its own; it is checked where a tree or commit lists
+ *  its chunks.  A tree leaf that migrate rewrote in place is intact if
+ *  it holds what migrate wrote, as recorded in FileTree.REWRITTEN.
+ *  @author Ruize Xu
+ */
+class Fsck {
+
+    /** Most files a task checks itself rather than splitting. */
+    static final int TASK_SIZE = 16;
+
+    /** The shared .gitlet directory checked. */
+    private final File _dir;
+
+    /** True if the ids of blobs are hashes of their contents alone, as
+     *  in repositories made or migrated since BLOB_FORMAT 1. */
+    private final boolean _contentIds;
+
+    /** What each stored object that is intact refers to, by name. */
+    private final ConcurrentHashMap<String, List<String>> _refs =
+        new ConcurrentHashMap<>();
+
+    /** The names of the stored objects that are damaged. */
+    private final Set<String> _corrupt = ConcurrentHashMap.newKeySet();
+
+    /** The hash of the contents of each leaf migrate rewrote in place,
+     *  by id. */
+    private final Map<String, String> _rewritten;
+
+    /** A check of the .gitlet directory DIR, whose blob ids are hashes
+     *  of their contents alone if CONTENTIDS. */
+    Fsck(File dir, boolean contentIds) {
+        _dir = dir;
+        _contentIds = contentIds;
+        _rewritten = FileTree.rewritten(dir);
+    }
+
+    /**
+     * Check every object, walking from the commits TIPS and the blobs
+     * STAGED, and return what was found.
+     * @param tips Collection of branch head uids
+     * @param staged Collection of staged blobs
+     * @return FsckReport the missing, corrupt and dangling objects
+     */
+    FsckReport run(Collection<String> tips, Collection<Blob> staged) {
+        List<String> kinds = new ArrayList<>();
+        List<File> files = new ArrayList<>();
+        list("commit", ObjectStore.commitDir().getName(), kinds, files);
+        list("tree", FileTree.DIR, kinds, files);
+        list("blob", ObjectStore.blobDir().getName(), kinds, files);
+        list("chunk", ObjectStore.chunkDir().getName(), kinds, files);
+        ForkJoinPool pool =
+            new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            pool.invoke(new Check(kinds, files, 0, files.size()));
+        } finally {
+            pool.shutdown();
+        }
+
+        ArrayDeque<String> queue = new ArrayDeque<>();
+        for (String tip : tips) {
+            queue.add("commit " + tip);
+        }
+        for (Blob blob : staged) {
+            queue.add(blobRef(blob));
+        }
+        Set<String> reached = new HashSet<>();
+        while (!queue.isEmpty()) {
+            String name = queue.remove();
+            List<String> refs = _refs.get(name);
+            if (reached.add(name) && refs != null) {
+                queue.addAll(refs);
+            }
+        }
+        Set<String> referred = new HashSet<>(reached);
+        for (List<String> refs : _refs.values()) {
+            referred.addAll(refs);
+        }
+        List<String> missing = new ArrayList<>();
+        for (String name : referred) {
+            if (!_refs.containsKey(name) && !_corrupt.contains(name)) {
+                missing.add(name);
+            }
+        }
+        List<String> dangling = new ArrayList<>();
+        for (String name : _refs.keySet()) {
+            if (!referred.contains(name)) {
+                dangling.add(name);
+            }
+        }
+        List<String> corrupt = new ArrayList<>(_corrupt);
+        Collections.sort(missing);
+        Collections.sort(corrupt);
+        Collections.sort(dangling);
+        return new FsckReport(missing, corrupt, dangling, files.size());
+    }
+
+    /** Add to FILES the files in the subdirectory SUBDIR of the .gitlet
+     *  directory, and KIND to KINDS once for each. */
+    private void list(String kind, String subdir, List<String> kinds,
+                      List<File> files) {
+        File[] found = new File(_dir, subdir).listFiles(File::isFile);
+        if (found != null) {
+            for (File file : found) {
+                kinds.add(kind);
+                files.add(file);
+            }
+        }
+    }
+
+    /** Check FILE, which holds an object of kind KIND, and record what
+     *  it refers to or that it is damaged. */
+    private void check(String kind, File file) {
+        String id = file.getName();
+        String name = kind + " " + id;
+        List<String> refs = new ArrayList<>();
+        boolean intact;
+        try {
+            switch (kind) {
+            case "commit":
+                Commit commit = Utils.readObject(file, Commit.class);
+                intact = commit.intact(id);
+                if (commit.getParentid() != null) {
+                    for (String parent : commit.getParentid()) {
+                        refs.add("commit " + parent);
+                    }
+                }
+                if (commit.getTreeId() != null) {
+                    refs.add("tree " + commit.getTreeId());
+                } else if (commit.getBlobs() != null) {
+                    for (Blob blob : commit.getBlobs().values()) {
+                        refs.add(blobRef(blob));
+                    }
+                }
+                break;
+            case "tree":
+                intact = FileTree.readNode(file, _rewritten.get(id),
+                                           child -> refs.add("tree " + child),
+                                           blob -> refs.add(blobRef(blob)));
+                break;
+            case "blob":
+                intact = !_contentIds || Utils.sha1File(file).equals(id);
+                break;
+            default:
+                intact = Utils.sha1File(file).equals(id);
+                break;
+            }
+        } catch (RuntimeException excp) {
+            intact = false;
+        }
+        if (intact) {
+            _refs.put(name, refs);
+        } else {
+            _corrupt.add(name);
+        }
+    }
+
+    /** Return the name of BLOB.  A chunked blob, which has no file of
+     *  its own, is recorded here as referring to its chunks, or as
+     *  damaged if its id is not theirs. */
+    private String blobRef(Blob blob) {
+        String name = "blob " + blob.getHashID();
+        if (blob.isChunked() && !_refs.containsKey(name)) {
+            if (_contentIds && !blob.chunksIntact()) {
+                _corrupt.add(name);
+            } else {
+                List<String> chunks = new ArrayList<>();
+                for (String id : blob.getChunkIds()) {
+                    chunks.add("chunk " + id);
+                }
+                _refs.putIfAbsent(name, chunks);
+            }
+        }
+        return name;
+    }
+
+    /** The check of the files FILES[LO .. HI - 1], whose kinds are
+     *  KINDS[LO .. HI - 1], halved until TASK_SIZE or fewer remain. */
+    private final class Check extends RecursiveAction {
+
+        /** Kind of each file. */
+        private final List<String> _kinds;
+
+        /** All the files. */
+        private final List<File> _files;
+
+        /** First file of this task. */
+        private final int _lo;
+
+        /** One past the last file of this task. */
+        private final int _hi;
+
+        /** The check of the files FILES, of kinds KINDS, from LO to just
+         *  before HI. */
+        Check(List<String> kinds, List<File> files, int lo, int hi) {
+            _kinds = kinds;
+            _files = files;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo <= TASK_SIZE) {
+                for (int i = _lo; i < _hi; i += 1) {
+                    check(_kinds.get(i), _files.get(i));
+                }
+            } else {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new Check(_kinds, _files, _lo, mid),
+                          new Check(_kinds, _files, mid, _hi));
+            }
+        }
+    }
+}
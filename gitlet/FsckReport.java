@@ -0,0 +1,67 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** The outcome of fsck: the objects found missing, corrupt or dangling,
+ *  each given as its kind ("commit", "tree", "blob" or "chunk") and id,
+ *  as in "commit 3f2a...", in order.
+ *  @author Ruize Xu
+ */
+public final class FsckReport {
+
+    /** Objects something reachable refers to that are not stored. */
+    private final List<String> _missing;
+
+    /** Stored objects that cannot be read or do not hash to their id. */
+    private final List<String> _corrupt;
+
+    /** Stored objects that nothing refers to and no branch reaches. */
+    private final List<String> _dangling;
+
+    /** Number of stored objects checked. */
+    private final int _checked;
+
+    /**
+     * The report of a check of CHECKED objects that found MISSING,
+     * CORRUPT and DANGLING objects.
+     * @param missing List of missing objects
+     * @param corrupt List of corrupt objects
+     * @param dangling List of dangling objects
+     * @param checked int the number of objects checked
+     */
+    FsckReport(List<String> missing, List<String> corrupt,
+               List<String> dangling, int checked) {
+        _missing = Collections.unmodifiableList(new ArrayList<>(missing));
+        _corrupt = Collections.unmodifiableList(new ArrayList<>(corrupt));
+        _dangling = Collections.unmodifiableList(new ArrayList<>(dangling));
+        _checked = checked;
+    }
+
+    /** Return the objects referred to but not stored. */
+    public List<String> getMissing() {
+        return _missing;
+    }
+
+    /** Return the stored objects that are damaged. */
+    public List<String> getCorrupt() {
+        return _corrupt;
+    }
+
+    /** Return the stored objects nothing refers to. */
+    public List<String> getDangling() {
+        return _dangling;
+    }
+
+    /** Return the number of stored objects checked. */
+    public int getChecked() {
+        return _checked;
+    }
+
+    /** Return true if nothing is missing or corrupt; dangling objects
+     *  do no harm. */
+    public boolean isIntact() {
+        return _missing.isEmpty() && _corrupt.isEmpty();
+    }
+}
@@ -2,18 +2,20 @@ package gitlet;
 
 /** General exception indicating a Gitlet error.  For fatal errors, the
  *  result of .getMessage() is the error message to be printed.
+ *  Subclasses mark the errors a caller of the library may want to tell
+ *  apart.
  *  @author P. N. Hilfinger
  */
-class GitletException extends RuntimeException {
+public class GitletException extends RuntimeException {
 
 
     /** A GitletException with no message. */
-    GitletException() {
+    public GitletException() {
         super();
     }
 
     /** A GitletException MSG as its message. */
-    GitletException(String msg) {
+    public GitletException(String msg) {
         super(msg);
     }
 
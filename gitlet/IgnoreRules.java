@@ -0,0 +1,305 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/** The files of a working tree that Gitlet passes over, as the file
+ *  .gitletignore at its root lists them, compiled once into rules that
+ *  every scan of the working tree consults.  A rule that matches a
+ *  directory prunes it: scans never look inside, so a generated tree of
+ *  any size costs one test.
+ *
+ *  The file has one glob pattern per line, as for Git: blank lines and
+ *  lines starting with "#" are skipped; "*" matches any characters but
+ *  "/", "?" one such character, "[...]" one of a set and "**" any number
+ *  of directories; a pattern ending in "/" matches only directories; a
+ *  pattern with a "/" before its end is matched against the whole path
+ *  from the root, and any other against the last part of a path at any
+ *  depth; a pattern starting with "!" takes back what an earlier one
+ *  matched.  The last rule to match a path decides.  The names scans
+ *  have always skipped come before the file's rules, so the file can
+ *  take them back; .gitlet is always skipped.
+ *  @author Ruize Xu
+ */
+class IgnoreRules {
+
+    /** Name of the file of rules at the root of a working tree. */
+    static final String FILE = ".gitletignore";
+
+    /** The rules that come before those of the file. */
+    private static final List<String> DEFAULTS = Arrays.asList(
+        ".DS_Store", ".gitignore", "proj3.iml", "Makefile");
+
+    /** The rules of the last file read, kept while it is unchanged. */
+    private static IgnoreRules _cached;
+
+    /** The file the rules were read from, or null for the defaults. */
+    private final File _file;
+
+    /** When _file was last modified, when it was read. */
+    private final long _modified;
+
+    /** The rules, in order. */
+    private final List<Rule> _rules = new ArrayList<>();
+
+    /** The defaults followed by the rules in FILE, last modified at
+     *  MODIFIED, or by none if FILE is null. */
+    private IgnoreRules(File file, long modified) {
+        _file = file;
+        _modified = modified;
+        for (String line : DEFAULTS) {
+            add(line);
+        }
+        if (file != null) {
+            for (String line : Utils.readContentsAsString(file)
+                     .split("\r?\n")) {
+                add(line);
+            }
+        }
+    }
+
+    /**
+     * Return the rules of the working tree whose root is ROOT, read from
+     * its .gitletignore only when that has changed since last read.
+     * @param root File the root of the working tree
+     * @return IgnoreRules the rules
+     */
+    static synchronized IgnoreRules of(File root) {
+        File file = new File(root, FILE);
+        File source = file.isFile() ? file.getAbsoluteFile() : null;
+        long modified = source == null ? 0 : source.lastModified();
+        if (_cached == null || !same(_cached._file, source)
+            || _cached._modified != modified) {
+            _cached = new IgnoreRules(source, modified);
+        }
+        return _cached;
+    }
+
+    /** Return true if the files A and B are both null or equal. */
+    private static boolean same(File a, File b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Return true if the file or directory at PATH, relative to the root
+     * with "/" between its parts, is passed over.  Only PATH itself is
+     * tested, not the directories it is in: scans test each directory
+     * before they enter it.
+     * @param path String the path from the root
+     * @param dir boolean true if PATH is a directory
+     * @return boolean true if scans pass over it
+     */
+    boolean ignored(String path, boolean dir) {
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        if (name.equals(".gitlet")) {
+            return true;
+        }
+        for (int i = _rules.size() - 1; i >= 0; i -= 1) {
+            Rule rule = _rules.get(i);
+            if (rule.matches(path, name, dir)) {
+                return !rule._negated;
+            }
+        }
+        return false;
+    }
+
+    /** Return true if the file or directory FILE, directly in the root,
+     *  is passed over. */
+    boolean ignored(File file) {
+        return ignored(file.getName(), file.isDirectory());
+    }
+
+    /**
+     * Add to FILES the path from ROOT, with "/" between its parts, of
+     * each regular file at or below START, a directory in the working
+     * tree at ROOT, that these rules do not pass over; the directories
+     * they pass over are not entered, nor those with a .gitlet of their
+     * own, the working trees of other worktrees.
+     * @param root Path the root of the working tree
+     * @param start Path the directory to list
+     * @param files Collection the paths found
+     */
+    void collect(Path root, Path start, Collection<String> files) {
+        try {
+            Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(
+                    Path dir, BasicFileAttributes attrs) {
+                    String name = path(root, dir);
+                    return !name.isEmpty() && (ignored(name, true)
+                        || Files.exists(dir.resolve(".gitlet")))
+                        ? FileVisitResult.SKIP_SUBTREE
+                        : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file,
+                                                 BasicFileAttributes attrs) {
+                    Trace.count(Trace.Counter.FILES_STATED);
+                    String name = path(root, file);
+                    if (attrs.isRegularFile() && !ignored(name, false)) {
+                        files.add(name);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file,
+                                                       IOException excp) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the path of FILE from ROOT, with "/" between its parts. */
+    static String path(Path root, Path file) {
+        return root.relativize(file).toString()
+            .replace(File.separatorChar, '/');
+    }
+
+    /** Compile LINE of the file into a rule, unless it has none. */
+    private void add(String line) {
+        String glob = line.trim();
+        if (glob.isEmpty() || glob.startsWith("#")) {
+            return;
+        }
+        boolean negated = glob.startsWith("!");
+        if (negated) {
+            glob = glob.substring(1);
+        }
+        boolean dirOnly = glob.endsWith("/");
+        if (dirOnly) {
+            glob = glob.substring(0, glob.length() - 1);
+        }
+        boolean anchored = glob.indexOf('/') >= 0;
+        if (glob.startsWith("/")) {
+            glob = glob.substring(1);
+        }
+        if (!glob.isEmpty()) {
+            _rules.add(new Rule(glob, negated, dirOnly, anchored));
+        }
+    }
+
+    /** Return the regular expression matching what GLOB matches. */
+    private static String regex(String glob) {
+        StringBuilder result = new StringBuilder();
+        int n = glob.length();
+        for (int i = 0; i < n; i += 1) {
+            char c = glob.charAt(i);
+            switch (c) {
+            case '*':
+                if (i + 1 < n && glob.charAt(i + 1) == '*') {
+                    i += 1;
+                    if (i + 1 < n && glob.charAt(i + 1) == '/') {
+                        i += 1;
+                        result.append("(?:.*/)?");
+                    } else {
+                        result.append(".*");
+                    }
+                } else {
+                    result.append("[^/]*");
+                }
+                break;
+            case '?':
+                result.append("[^/]");
+                break;
+            case '[':
+                int end = glob.indexOf(']', i + 2);
+                if (end < 0) {
+                    result.append("\\[");
+                } else {
+                    String set = glob.substring(i + 1, end);
+                    if (set.startsWith("!")) {
+                        set = "^" + set.substring(1);
+                    }
+                    result.append('[').append(set.replace("\\", "\\\\")
+                                              .replace("[", "\\["))
+                        .append(']');
+                    i = end;
+                }
+                break;
+            case '\\':
+                if (i + 1 < n) {
+                    i += 1;
+                    result.append(Pattern.quote(String.valueOf(
+                        glob.charAt(i))));
+                }
+                break;
+            default:
+                if (Character.isLetterOrDigit(c)) {
+                    result.append(c);
+                } else {
+                    result.append('\\').append(c);
+                }
+                break;
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return true if GLOB has no characters special to globs. */
+    private static boolean literal(String glob) {
+        for (int i = 0; i < glob.length(); i += 1) {
+            if ("*?[\\".indexOf(glob.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** One compiled line of the rules. */
+    private static final class Rule {
+
+        /** True if the rule takes back what earlier ones matched. */
+        private final boolean _negated;
+
+        /** True if the rule matches only directories. */
+        private final boolean _dirOnly;
+
+        /** True if the rule matches whole paths rather than names. */
+        private final boolean _anchored;
+
+        /** The pattern when it has no special characters, compared as
+         *  a String; otherwise null. */
+        private final String _literal;
+
+        /** The pattern as a regular expression, if not literal. */
+        private final Pattern _pattern;
+
+        /** The rule for GLOB, which is NEGATED, for directories only if
+         *  DIRONLY and matched against whole paths if ANCHORED. */
+        Rule(String glob, boolean negated, boolean dirOnly,
+             boolean anchored) {
+            _negated = negated;
+            _dirOnly = dirOnly;
+            _anchored = anchored;
+            _literal = literal(glob) ? glob : null;
+            _pattern = _literal == null ? Pattern.compile(regex(glob))
+                : null;
+        }
+
+        /** Return true if the rule matches the file at PATH, whose last
+         *  part is NAME, which is a directory if DIR. */
+        boolean matches(String path, String name, boolean dir) {
+            if (_dirOnly && !dir) {
+                return false;
+            }
+            String subject = _anchored ? path : name;
+            return _literal != null ? _literal.equals(subject)
+                : _pattern.matcher(subject).matches();
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package gitlet;
 
-import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 
@@ -9,89 +8,123 @@ import java.util.Arrays;
  */
 public class Main {
 
-    /** Usage: java gitlet.Main ARGS, where ARGS contains
-     *  <COMMAND> <OPERAND> .... */
+    /** Usage: java gitlet.Main [--trace] ARGS, where ARGS contains
+     *  <COMMAND> <OPERAND> ....  With --trace, or with the environment
+     *  variable GITLET_TRACE set, the time taken by each phase of the
+     *  command and counts of the work done are printed to standard error
+     *  as the program exits. */
     public static void main(String... args) {
+        ArrayList<String> input = new ArrayList<>(Arrays.asList(args));
+        if (!input.isEmpty() && input.get(0).equals("--trace")) {
+            input.remove(0);
+            Trace.enable();
+        } else if (System.getenv("GITLET_TRACE") != null) {
+            Trace.enable();
+        }
+        if (Trace.enabled()) {
+            String command = String.join(" ", input);
+            Runtime.getRuntime().addShutdownHook(new Thread(() ->
+                Trace.report(System.err, command)));
+        }
         try {
-            if (args.length == 0) {
-                Utils.message("Please enter a command.");
-                throw new GitletException();
-            }
-            ArrayList<String> input = new ArrayList<>(Arrays.asList(args));
-            Repo repo = null;
-            File tmpDir = new File(_cwdString + "/.gitlet");
-            if (tmpDir.exists()) {
-                File mr =  new File(".gitlet/repo");
-                if (mr.exists()) {
-                    repo = Utils.readObject(mr, Repo.class);
-                }
+            if (input.isEmpty()) {
+                throw new GitletException("Please enter a command.");
             }
             if (input.get(0).equals("init")) {
-                if (!tmpDir.exists()) {
-                    repo = new Repo();
-                    File mr = new File(".gitlet/repo");
-                    Utils.writeObject(mr, repo);
-                } else {
-                    System.out.println("A Gitlet version-control "
-                            + "system already exists in the "
-                            + "current directory");
-                    System.exit(0);
-                }
-            }
-            if (validCommand(args[0])) {
-                if (!tmpDir.exists()) {
-                    Utils.message("Not in an initialized Gitlet directory.");
-                    System.exit(0);
-                }
-                if (input.get(0).equals("checkout")) {
-                    if (input.size() == 2) {
-                        repo.checkout(input.get(1));
-                    } else {
-                        input.remove(0);
-                        repo.checkout(input);
-                    }
-                } else if (input.size() == 1) {
-                    emptyOperandCommand(input, repo);
-                } else if (input.size() == 2) {
-                    oneOperandCommand(input, repo);
-                }
-                Utils.writeObject(new File(".gitlet/repo"), repo);
+                Repository.init();
+            } else if (input.get(0).equals("clone") && input.size() == 2) {
+                Repository.cloneFrom(input.get(1));
+            } else if (validCommand(input.get(0))) {
+                dispatch(input, Repository.open());
             } else {
-                Utils.message(" No command with that name exists.");
-                throw new GitletException();
+                throw new GitletException(
+                    " No command with that name exists.");
             }
         } catch (GitletException e) {
+            if (e.getMessage() != null) {
+                System.out.println(e.getMessage());
+            }
             System.exit(0);
         }
     }
 
     /**
-     * Call the method with no input in Class Repo.
+     * Run the command INPUT, with its operands, on REPO.  A command that
+     * changes the repository is timed in load, run and save phases by
+     * Repository; a read-only one is timed here as one run phase, from
+     * the query to the last line printed, as the commits of a log are
+     * read as they are printed.
+     * @param input Arraylist Input Args
+     * @param repo Repository the repository
+     */
+    private static void dispatch(ArrayList<String> input, Repository repo) {
+        if (Arrays.asList(_readCommands).contains(input.get(0))) {
+            try (Trace.Phase run = Trace.phase("run")) {
+                runCommand(input, repo);
+            }
+        } else {
+            runCommand(input, repo);
+        }
+    }
+
+    /**
+     * Call the Repository method for the command INPUT on REPO, and
+     * print what it returns.
+     * @param input Arraylist Input Args
+     * @param repo Repository the repository
+     */
+    private static void runCommand(ArrayList<String> input,
+                                   Repository repo) {
+        if (input.get(0).equals("checkout")) {
+            checkoutCommand(input, repo);
+        } else if (input.get(0).equals("worktree")) {
+            worktreeCommand(input, repo);
+        } else if (input.get(0).equals("add") && input.size() > 2) {
+            repo.add(new ArrayList<>(input.subList(1, input.size())));
+        } else if (input.size() == 1) {
+            emptyOperandCommand(input, repo);
+        } else if (input.size() == 2) {
+            oneOperandCommand(input, repo);
+        } else if (input.size() == 3) {
+            twoOperandCommand(input, repo);
+        }
+    }
+
+    /**
+     * Call the method with no input in Class Repository.
      * @param in Arraylist Input Args
-     * @param repo Repo the main operation class
+     * @param repo Repository the repository
      */
-    private static void emptyOperandCommand(ArrayList<String> in, Repo repo) {
+    private static void emptyOperandCommand(ArrayList<String> in,
+                                            Repository repo) {
         String command = in.remove(0);
         switch (command) {
         case "log":
-            repo.log();
+            printLog(repo.log());
             break;
         case "status":
-            repo.status();
+            printStatus(repo.status());
             break;
         case "global-log":
-            repo.globalLog();
+            printLog(repo.allCommits());
+            break;
+        case "migrate":
+            System.out.println(repo.migrate());
+            break;
+        case "fsck":
+            printFsck(repo.fsck());
             break;
         default:
         }
     }
 
     /**
-     * Call the method with one operand in Class Repo.
+     * Call the method with one operand in Class Repository.
      * @param in Arraylist Input Args
-     * @param repo Repo the main operation class
+     * @param repo Repository the repository
      */
-    private static void oneOperandCommand(ArrayList<String> in, Repo repo) {
+    private static void oneOperandCommand(ArrayList<String> in,
+                                          Repository repo) {
         String command = in.get(0);
         String operand = in.get(1);
         switch (command) {
@@ -108,22 +141,185 @@ public class Main {
             repo.branch(operand);
             break;
         case "rm-branch":
-            repo.rmbranch(operand);
+            repo.removeBranch(operand);
             break;
         case "reset":
             repo.reset(operand);
             break;
         case "find":
-            repo.find(operand);
+            for (String uid : repo.find(operand)) {
+                System.out.println(uid);
+            }
             break;
         case "merge":
-            repo.merge(operand);
+            printMerge(repo.merge(operand));
+            break;
+        case "cherry-pick":
+            printMerge(repo.cherryPick(operand));
+            break;
+        case "rebase":
+            printMerge(repo.rebase(operand));
+            break;
+        case "rm-remote":
+            repo.removeRemote(operand);
             break;
         default:
 
         }
     }
 
+    /**
+     * Call the method with two operands in Class Repository.
+     * @param in Arraylist Input Args
+     * @param repo Repository the repository
+     */
+    private static void twoOperandCommand(ArrayList<String> in,
+                                          Repository repo) {
+        String command = in.get(0);
+        String first = in.get(1);
+        String second = in.get(2);
+        switch (command) {
+        case "log":
+            if (!first.equals("--")) {
+                throw new GitletException("Incorrect operands.");
+            }
+            printLog(repo.history(second));
+            break;
+        case "add-remote":
+            repo.addRemote(first, second);
+            break;
+        case "fetch":
+            repo.fetch(first, second);
+            break;
+        case "push":
+            repo.push(first, second);
+            break;
+        case "pull":
+            repo.pull(first, second);
+            break;
+        default:
+
+        }
+    }
+
+    /**
+     * Call the checkout command: of a branch, of a file as the head
+     * commit has it, or of a file as a given commit has it.
+     * @param in Arraylist Input Args
+     * @param repo Repository the repository
+     */
+    private static void checkoutCommand(ArrayList<String> in,
+                                        Repository repo) {
+        if (in.size() == 2) {
+            repo.checkout(in.get(1));
+        } else if (in.size() == 3 && in.get(1).equals("--")) {
+            repo.checkoutFile(null, in.get(2));
+        } else if (in.size() == 4 && in.get(2).equals("--")) {
+            repo.checkoutFile(in.get(1), in.get(3));
+        } else {
+            throw new GitletException("Incorrect operands");
+        }
+    }
+
+    /**
+     * Call the worktree subcommand in Class Repository.
+     * @param in Arraylist Input Args
+     * @param repo Repository the repository
+     */
+    private static void worktreeCommand(ArrayList<String> in,
+                                        Repository repo) {
+        if (in.size() == 4 && in.get(1).equals("add")) {
+            repo.addWorktree(in.get(2), in.get(3));
+        } else {
+            throw new GitletException("Incorrect operands.");
+        }
+    }
+
+    /**
+     * Print the commits COMMITS as log and global-log do.
+     * @param commits Iterable of commits
+     */
+    private static void printLog(Iterable<Commit> commits) {
+        for (Commit c : commits) {
+            System.out.println("===");
+            System.out.println("commit " + c.getUid());
+            String[] parents = c.getParentid();
+            if (parents != null && parents.length > 1) {
+                System.out.println("Merge: " + parents[0].substring(0, 7)
+                                   + " " + parents[1].substring(0, 7));
+            }
+            System.out.println("Date: " + c.getTimestamp());
+            System.out.println(c.getMessage());
+            System.out.println();
+        }
+    }
+
+    /**
+     * Print STATUS as the status command does.
+     * @param status Status the status
+     */
+    private static void printStatus(Status status) {
+        System.out.println("=== Branches ===");
+        for (String branch : status.getBranches()) {
+            if (branch.equals(status.getCurrentBranch())) {
+                System.out.println("*" + branch);
+            } else {
+                System.out.println(branch);
+            }
+        }
+        System.out.println();
+        System.out.println("=== Staged Files ===");
+        for (String staged : status.getStaged()) {
+            System.out.println(staged);
+        }
+        System.out.println();
+        System.out.println("=== Removed Files ===");
+        for (String removed : status.getRemoved()) {
+            System.out.println(removed);
+        }
+        System.out.println("\n=== Modifications Not Staged For Commit ===");
+        System.out.println("\n=== Untracked Files ===");
+        System.out.println();
+    }
+
+    /**
+     * Print the objects REPORT found missing, corrupt or dangling, one
+     * to a line with the problem first, as the fsck command does.
+     * @param report FsckReport the report
+     */
+    private static void printFsck(FsckReport report) {
+        for (String name : report.getMissing()) {
+            System.out.println("missing " + name);
+        }
+        for (String name : report.getCorrupt()) {
+            System.out.println("corrupt " + name);
+        }
+        for (String name : report.getDangling()) {
+            System.out.println("dangling " + name);
+        }
+    }
+
+    /**
+     * Print what the merge RESULT did, as the merge command does.
+     * @param result MergeResult the result
+     */
+    private static void printMerge(MergeResult result) {
+        switch (result.getKind()) {
+        case UP_TO_DATE:
+            System.out.println(
+                "Given branch is an ancestor of the current branch.");
+            break;
+        case FAST_FORWARD:
+            System.out.println("Current branch fast-forwarded.");
+            break;
+        default:
+            for (int i = 0; i < result.getConflicts().size(); i += 1) {
+                System.out.println("Encountered a merge conflict.");
+            }
+            break;
+        }
+    }
+
     /** Takes in a string ARG word, will return whether or not
      * it is a valid command. */
     private static boolean validCommand(String arg) {
@@ -138,16 +334,12 @@ public class Main {
     /** Array of possible valid commands. */
     private static String[] _vaildCommands = new String[] {"init", "add",
         "commit", "rm", "log", "global-log", "find", "status", "checkout",
-        "branch", "rm-branch", "reset", "merge"};
+        "branch", "rm-branch", "reset", "merge", "migrate", "add-remote",
+        "rm-remote", "fetch", "push", "pull", "clone", "worktree", "fsck",
+        "cherry-pick", "rebase"};
 
-    /**
-     * The current working directory, File type.
-     */
-    private static File _cwd = new File(System.getProperty("user.dir"));
-
-    /**
-     * The current working directory, String type.
-     */
-    private static String _cwdString = System.getProperty("user.dir");
+    /** The commands that only read the repository. */
+    private static String[] _readCommands = new String[] {"log",
+        "global-log", "find", "status", "fsck"};
 
 }
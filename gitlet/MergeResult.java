@@ -0,0 +1,66 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** The outcome of a merge: what kind of merge it was, the commit the
+ *  current branch was left at, and the files that conflicted, which are
+ *  left in the working directory with both versions marked.
+ *  @author Ruize Xu
+ */
+public final class MergeResult {
+
+    /** The kinds of merge. */
+    public enum Kind {
+        /** The given branch was already merged; nothing changed. */
+        UP_TO_DATE,
+        /** The current branch was moved to the given branch's head. */
+        FAST_FORWARD,
+        /** A merge commit was made. */
+        MERGED
+    }
+
+    /** What kind of merge this was. */
+    private final Kind _kind;
+
+    /** Uid of the head commit of the current branch after the merge. */
+    private final String _commit;
+
+    /** Names of the files that conflicted, in the order met. */
+    private final List<String> _conflicts;
+
+    /**
+     * A merge of kind KIND that left the current branch at COMMIT, with
+     * the conflicted files CONFLICTS.
+     * @param kind Kind the kind of merge
+     * @param commit String the uid of the resulting head
+     * @param conflicts List of conflicted file names
+     */
+    MergeResult(Kind kind, String commit, List<String> conflicts) {
+        _kind = kind;
+        _commit = commit;
+        _conflicts =
+            Collections.unmodifiableList(new ArrayList<String>(conflicts));
+    }
+
+    /** Return the kind of merge. */
+    public Kind getKind() {
+        return _kind;
+    }
+
+    /** Return the uid of the head commit after the merge. */
+    public String getCommit() {
+        return _commit;
+    }
+
+    /** Return the names of the files that conflicted. */
+    public List<String> getConflicts() {
+        return _conflicts;
+    }
+
+    /** Return true if any file conflicted. */
+    public boolean hasConflicts() {
+        return !_conflicts.isEmpty();
+    }
+}
@@ -0,0 +1,14 @@
+package gitlet;
+
+/** Signals that a commit, branch, remote or file named in a request
+ *  does not exist.
+ *  @author Ruize Xu
+ */
+public class NotFoundException extends GitletException {
+
+    /** A NotFoundException with MSG as its message. */
+    public NotFoundException(String msg) {
+        super(msg);
+    }
+
+}
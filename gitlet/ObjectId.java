@@ -0,0 +1,180 @@
+package gitlet;
+
+/** The id of a commit or blob, its 20-byte SHA-1 hash, held as two longs
+ *  and an int rather than as 40 hex digits.  An ObjectId takes a third
+ *  of the memory of the String, and compares and hashes without
+ *  looking at characters: the hash is the first four bytes, which are
+ *  as uniform as SHA-1 makes them.  Ids are still written to disk as
+ *  hex Strings, so repositories keep their format; ObjectIds are for
+ *  the tables and walks that hold many ids at once.
+ *  @author Ruize Xu
+ */
+final class ObjectId implements Comparable<ObjectId> {
+
+    /** Bytes in an id. */
+    static final int BYTES = Utils.UID_LENGTH / 2;
+
+    /** Bytes 0 to 7 of the id, big-endian. */
+    private final long _w0;
+
+    /** Bytes 8 to 15 of the id, big-endian. */
+    private final long _w1;
+
+    /** Bytes 16 to 19 of the id, big-endian. */
+    private final int _w2;
+
+    /** The id whose bytes are W0, W1 and W2, big-endian. */
+    private ObjectId(long w0, long w1, int w2) {
+        _w0 = w0;
+        _w1 = w1;
+        _w2 = w2;
+    }
+
+    /** Return the id written as the 40 hex digits HEX, in either case;
+     *  throws IllegalArgumentException if HEX is not one. */
+    static ObjectId fromHex(String hex) {
+        if (hex.length() != Utils.UID_LENGTH) {
+            throw new IllegalArgumentException("not an object id: " + hex);
+        }
+        return new ObjectId(hexLong(hex, 0), hexLong(hex, 16),
+                            (int) hexBits(hex, 32, 8));
+    }
+
+    /** Return the id in the BYTES bytes of DATA starting at OFFSET. */
+    static ObjectId fromBytes(byte[] data, int offset) {
+        return new ObjectId(getLong(data, offset), getLong(data, offset + 8),
+                            (int) getBits(data, offset + 16, 4));
+    }
+
+    /** Return true if S is an id written as 40 hex digits. */
+    static boolean isId(String s) {
+        if (s.length() != Utils.UID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i += 1) {
+            if (Character.digit(s.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Write the BYTES bytes of this id to DATA, starting at OFFSET. */
+    void copyTo(byte[] data, int offset) {
+        putBits(data, offset, _w0, 8);
+        putBits(data, offset + 8, _w1, 8);
+        putBits(data, offset + 16, _w2, 4);
+    }
+
+    /** Return true if the BYTES bytes of DATA starting at OFFSET are
+     *  this id. */
+    boolean equalsAt(byte[] data, int offset) {
+        return getLong(data, offset) == _w0
+            && getLong(data, offset + 8) == _w1
+            && (int) getBits(data, offset + 16, 4) == _w2;
+    }
+
+    /** Return the first four bytes of the id in DATA at OFFSET, which
+     *  are the hashCode() of that id. */
+    static int hashAt(byte[] data, int offset) {
+        return (int) getBits(data, offset, 4);
+    }
+
+    /** Return true if the hex digits of the id start with PREFIX, in
+     *  either case, so that PREFIX abbreviates the id. */
+    boolean startsWith(String prefix) {
+        return toHex().startsWith(prefix.toLowerCase());
+    }
+
+    /** Return the id as 40 lower-case hex digits. */
+    String toHex() {
+        char[] digits = new char[Utils.UID_LENGTH];
+        hexDigits(digits, 0, _w0, 16);
+        hexDigits(digits, 16, _w1, 16);
+        hexDigits(digits, 32, _w2, 8);
+        return new String(digits);
+    }
+
+    @Override
+    public String toString() {
+        return toHex();
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (_w0 >>> 32);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId other = (ObjectId) obj;
+        return _w0 == other._w0 && _w1 == other._w1 && _w2 == other._w2;
+    }
+
+    /** Order ids as their bytes, unsigned, which is also the order of
+     *  their hex Strings. */
+    @Override
+    public int compareTo(ObjectId other) {
+        int c = Long.compareUnsigned(_w0, other._w0);
+        if (c == 0) {
+            c = Long.compareUnsigned(_w1, other._w1);
+        }
+        if (c == 0) {
+            c = Integer.compareUnsigned(_w2, other._w2);
+        }
+        return c;
+    }
+
+    /** Return the 16 hex digits of HEX from START as a long. */
+    private static long hexLong(String hex, int start) {
+        return hexBits(hex, start, 16);
+    }
+
+    /** Return the N hex digits of HEX from START as a number. */
+    private static long hexBits(String hex, int start, int n) {
+        long result = 0;
+        for (int i = start; i < start + n; i += 1) {
+            int digit = Character.digit(hex.charAt(i), 16);
+            if (digit < 0) {
+                throw new IllegalArgumentException("not an object id: "
+                                                   + hex);
+            }
+            result = result << 4 | digit;
+        }
+        return result;
+    }
+
+    /** Write the N low hex digits of BITS to DIGITS from START. */
+    private static void hexDigits(char[] digits, int start, long bits,
+                                  int n) {
+        for (int i = start + n - 1; i >= start; i -= 1) {
+            digits[i] = Character.forDigit((int) bits & 0xf, 16);
+            bits >>>= 4;
+        }
+    }
+
+    /** Return the 8 bytes of DATA from OFFSET as a big-endian long. */
+    private static long getLong(byte[] data, int offset) {
+        return getBits(data, offset, 8);
+    }
+
+    /** Return the N bytes of DATA from OFFSET as a big-endian number. */
+    private static long getBits(byte[] data, int offset, int n) {
+        long result = 0;
+        for (int i = offset; i < offset + n; i += 1) {
+            result = result << 8 | (data[i] & 0xff);
+        }
+        return result;
+    }
+
+    /** Write the N low bytes of BITS to DATA from OFFSET, big-endian. */
+    private static void putBits(byte[] data, int offset, long bits, int n) {
+        for (int i = offset + n - 1; i >= offset; i -= 1) {
+            data[i] = (byte) bits;
+            bits >>>= 8;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Iterator;
+
+/** The content-addressed store behind Blob.  A small blob is kept whole
+ *  in .gitlet/staging under its id; a large one is kept as chunks in
+ *  .gitlet/chunks (see Chunker).  Contents are only ever read from here
+ *  on demand, through streams, channels or buffers.
+ *  @author Ruize Xu
+ */
+class ObjectStore {
+
+    /** The .gitlet directory holding the objects and the branches.  A
+     *  worktree shares the one of the repository it was added to. */
+    private static File _root = new File(".gitlet");
+
+    /** True if checkout should hard-link whole blobs into the working
+     *  tree instead of copying them, as requested by setting the
+     *  environment variable GITLET_CHECKOUT to "link".  Linked files
+     *  share their inode with the stored object, which is therefore
+     *  made read-only; edit such files only by replacing them. */
+    static final boolean LINK_CHECKOUT =
+        "link".equals(System.getenv("GITLET_CHECKOUT"));
+
+    /** Return the .gitlet directory holding the objects. */
+    static File root() {
+        return _root;
+    }
+
+    /** Use the .gitlet directory ROOT for all objects from now on. */
+    static void setRoot(File root) {
+        _root = root;
+    }
+
+    /** Return the directory holding the commits. */
+    static File commitDir() {
+        return new File(_root, "commits");
+    }
+
+    /** Return the directory holding whole blobs. */
+    static File blobDir() {
+        return new File(_root, "staging");
+    }
+
+    /** Return the directory holding the chunks of large blobs. */
+    static File chunkDir() {
+        return new File(_root, "chunks");
+    }
+
+    /** Return the directory holding the nodes of file trees. */
+    static File treeDir() {
+        return new File(_root, FileTree.DIR);
+    }
+
+    /** Return the file holding the commit with id UID. */
+    static File commitFile(String uid) {
+        return new File(commitDir(), uid);
+    }
+
+    /** Return the file holding the whole blob with id ID. */
+    static File blobFile(String id) {
+        return new File(blobDir(), id);
+    }
+
+    /** Return the file holding the chunk with id ID. */
+    static File chunkFile(String id) {
+        return new File(chunkDir(), id);
+    }
+
+    /** Store the contents of the working file SRC as the whole blob ID,
+     *  unless it is already stored, in the current WriteBatch.  The
+     *  bytes are copied unchanged by the kernel, without passing through
+     *  the Java heap, and the stored object is made read-only. */
+    static void putBlob(File src, String id) {
+        File target = blobFile(id);
+        if (WriteBatch.exists(target)) {
+            return;
+        }
+        File tmp = WriteBatch.temp(target);
+        Trace.count(Trace.Counter.FILES_WRITTEN);
+        Object event = Events.begin(Events.WRITE);
+        try (FileChannel in = FileChannel.open(src.toPath());
+             FileChannel out = FileChannel.open(tmp.toPath(),
+                 StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            transfer(in, out);
+            Events.end(event, id, out.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        tmp.setReadOnly();
+        WriteBatch.add(target, tmp);
+    }
+
+    /** Store CONTENTS as the whole blob ID, unless it is already
+     *  stored, in the current WriteBatch, and make the stored object
+     *  read-only. */
+    static void putBytes(String id, byte[] contents) {
+        File target = blobFile(id);
+        if (!WriteBatch.exists(target)) {
+            File tmp = WriteBatch.temp(target);
+            Utils.writeContents(tmp, (Object) contents);
+            tmp.setReadOnly();
+            WriteBatch.add(target, tmp);
+        }
+    }
+
+    /** Copy all of IN, from its current position, to the end of OUT. */
+    private static void transfer(FileChannel in, FileChannel out)
+        throws IOException {
+        long size = in.size();
+        for (long pos = in.position(); pos < size;) {
+            pos += in.transferTo(pos, size - pos, out);
+        }
+    }
+
+    /** Return the number of bytes in the contents of BLOB. */
+    static long size(Blob blob) {
+        if (!blob.isChunked()) {
+            return blobFile(blob.getHashID()).length();
+        }
+        long size = 0;
+        for (String id : blob.getChunkIds()) {
+            size += chunkFile(id).length();
+        }
+        return size;
+    }
+
+    /** Return a stream over the contents of BLOB.  For a chunked blob
+     *  each chunk is opened only when the stream reaches it. */
+    static InputStream open(Blob blob) {
+        Trace.count(Trace.Counter.OBJECTS_READ);
+        try {
+            if (!blob.isChunked()) {
+                return Files.newInputStream(
+                    blobFile(blob.getHashID()).toPath());
+            }
+            Iterator<String> ids = blob.getChunkIds().iterator();
+            return new SequenceInputStream(new ChunkStreams(ids));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return a channel over the contents of BLOB. */
+    static ReadableByteChannel channel(Blob blob) {
+        try {
+            if (!blob.isChunked()) {
+                Trace.count(Trace.Counter.OBJECTS_READ);
+                return FileChannel.open(blobFile(blob.getHashID()).toPath());
+            }
+            return Channels.newChannel(open(blob));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return a read-only buffer over the contents of BLOB.  A whole
+     *  blob is memory-mapped rather than read onto the heap. */
+    static ByteBuffer map(Blob blob) {
+        try {
+            if (!blob.isChunked()) {
+                Trace.count(Trace.Counter.OBJECTS_READ);
+                try (FileChannel ch = FileChannel.open(
+                         blobFile(blob.getHashID()).toPath())) {
+                    return ch.map(FileChannel.MapMode.READ_ONLY, 0,
+                                  ch.size());
+                }
+            }
+            long size = size(blob);
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("blob too large to map");
+            }
+            ByteBuffer buf = ByteBuffer.allocate((int) size);
+            try (ReadableByteChannel ch = channel(blob)) {
+                while (buf.hasRemaining() && ch.read(buf) >= 0) {
+                    continue;
+                }
+            }
+            buf.flip();
+            return buf.asReadOnlyBuffer();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Write the contents of BLOB to FILE, creating or overwriting it.
+     *  The bytes are moved by FileChannel.transferTo, so they never pass
+     *  through the Java heap.  With LINK_CHECKOUT, a whole blob is
+     *  hard-linked instead, falling back to a copy on file systems that
+     *  cannot link it.  An existing FILE is unlinked rather than
+     *  truncated, since it may itself be a link to a stored object. */
+    static void copyTo(Blob blob, File file) {
+        Path target = file.toPath();
+        Object event = Events.begin(Events.BLOB_READ);
+        try {
+            copy(blob, target);
+        } finally {
+            Events.end(event, blob.getHashID(),
+                       event != null ? size(blob) : 0);
+        }
+    }
+
+    /** Write the contents of BLOB to the file TARGET, as copyTo. */
+    private static void copy(Blob blob, Path target) {
+        try {
+            Path source = blobFile(blob.getHashID()).toPath();
+            if (LINK_CHECKOUT && !blob.isChunked() && Files.exists(target)
+                && Files.isSameFile(source, target)) {
+                return;
+            }
+            Files.deleteIfExists(target);
+            Trace.count(Trace.Counter.FILES_WRITTEN);
+            Trace.count(Trace.Counter.OBJECTS_READ);
+            if (LINK_CHECKOUT && !blob.isChunked()) {
+                try {
+                    Files.createLink(target, source);
+                    return;
+                } catch (IOException | UnsupportedOperationException excp) {
+                    /* Fall through to an ordinary copy. */
+                }
+            }
+            try (FileChannel out = FileChannel.open(target,
+                     StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                if (blob.isChunked()) {
+                    for (String id : blob.getChunkIds()) {
+                        try (FileChannel in =
+                                 FileChannel.open(chunkFile(id).toPath())) {
+                            transfer(in, out);
+                        }
+                    }
+                } else {
+                    try (FileChannel in = FileChannel.open(source)) {
+                        transfer(in, out);
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return true iff FILE holds exactly the contents of BLOB.  Sizes
+     *  are compared first, so most changed files are never read. */
+    static boolean sameContents(Blob blob, File file) {
+        Trace.count(Trace.Counter.FILES_STATED);
+        if (!file.isFile() || file.length() != size(blob)) {
+            return false;
+        }
+        if (!blob.isChunked()) {
+            return blob.getHashID().equals(Utils.sha1File(file));
+        }
+        try (InputStream a = open(blob);
+             InputStream b = Files.newInputStream(file.toPath())) {
+            byte[] bufA = new byte[Chunker.AVG_SIZE];
+            byte[] bufB = new byte[Chunker.AVG_SIZE];
+            while (true) {
+                int n = a.readNBytes(bufA, 0, bufA.length);
+                int m = b.readNBytes(bufB, 0, bufB.length);
+                if (n != m || !Arrays.equals(bufA, 0, n, bufB, 0, m)) {
+                    return false;
+                }
+                if (n == 0) {
+                    return true;
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Opens the chunk files of a chunked blob one at a time. */
+    private static class ChunkStreams implements Enumeration<InputStream> {
+
+        /** Streams over the chunks IDS. */
+        ChunkStreams(Iterator<String> ids) {
+            _ids = ids;
+        }
+
+        @Override
+        public boolean hasMoreElements() {
+            return _ids.hasNext();
+        }
+
+        @Override
+        public InputStream nextElement() {
+            try {
+                return Files.newInputStream(chunkFile(_ids.next()).toPath());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /** The remaining chunk ids. */
+        private final Iterator<String> _ids;
+    }
+}
@@ -0,0 +1,366 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+/** Reachability bitmaps over the CommitGraph: for every INTERVALth
+ *  position, the set of positions of the commits reachable from the one
+ *  there, itself included, as a Bitmap.  The set reachable from any
+ *  other commit is found by walking its parents only as far as the
+ *  nearest commits with a bitmap and adding theirs, and whether one
+ *  commit is an ancestor of another by a walk that skips every commit
+ *  below the ancestor's position, as no parent comes after its child,
+ *  and answers at the first commit with a bitmap.
+ *
+ *  The bitmaps live in the file "bitmaps" of the shared .gitlet
+ *  directory, beside the graph whose positions they use.  Like it, they
+ *  are a cache that only grows: Repo.save() adds those of new positions
+ *  after it extends the graph.
+ *
+ *  The file holds, as big-endian ints: a magic number, the version and
+ *  the number of bitmaps N; then N pairs of a position and the offset
+ *  of its bitmap from the start of the file; and then the bitmaps, as
+ *  Bitmap.write() lays them out.
+ *  @author Ruize Xu
+ */
+class Reachability {
+
+    /** Name of the file holding the bitmaps. */
+    static final String FILE = "bitmaps";
+
+    /** Distance between the positions given bitmaps. */
+    static final int INTERVAL = 512;
+
+    /** First int of the file: "GBMP". */
+    private static final int MAGIC = 0x47424d50;
+
+    /** Version of the file layout. */
+    private static final int VERSION = 1;
+
+    /** The shared .gitlet directory the bitmaps belong to. */
+    private final File _dir;
+
+    /** The graph whose positions the bitmaps hold. */
+    private final CommitGraph _graph;
+
+    /** The contents of the file, or null if there is none. */
+    private ByteBuffer _file;
+
+    /** Offset in _file of the bitmap of each slot, or -1 if the file
+     *  lacks it; slot S holds the bitmap of position (S + 1) * INTERVAL
+     *  - 1, so no lookup needs a map. */
+    private int[] _offsets;
+
+    /** Length in _file of the bitmap of each slot it has. */
+    private int[] _lengths;
+
+    /** The bitmap of each slot, once decoded from _file or made. */
+    private Bitmap[] _bitmaps;
+
+    /** Number of positions the last mergeBase() passed over. */
+    private int _walked;
+
+    /** The bitmaps of the shared .gitlet directory DIR over GRAPH. */
+    private Reachability(File dir, CommitGraph graph) {
+        _dir = dir;
+        _graph = graph;
+        int slots = graph.size() / INTERVAL;
+        _offsets = new int[slots];
+        _lengths = new int[slots];
+        _bitmaps = new Bitmap[slots];
+        Arrays.fill(_offsets, -1);
+    }
+
+    /**
+     * Return the bitmaps of the shared .gitlet directory DIR, whose
+     * commit graph is GRAPH; they are decoded only when used.
+     * @param dir File the shared .gitlet directory
+     * @param graph CommitGraph its commit graph
+     * @return Reachability the bitmaps
+     */
+    static Reachability read(File dir, CommitGraph graph) {
+        Reachability result = new Reachability(dir, graph);
+        File file = new File(dir, FILE);
+        if (!file.isFile()) {
+            return result;
+        }
+        ByteBuffer in = ByteBuffer.wrap(Utils.readContents(file));
+        try {
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                return result;
+            }
+            int n = in.getInt();
+            int[] positions = new int[n];
+            int[] offsets = new int[n + 1];
+            for (int i = 0; i < n; i += 1) {
+                positions[i] = in.getInt();
+                offsets[i] = in.getInt();
+            }
+            offsets[n] = in.limit();
+            for (int i = 0; i < n; i += 1) {
+                int slot = slot(positions[i]);
+                if (slot >= 0 && slot < result._offsets.length) {
+                    result._offsets[slot] = offsets[i];
+                    result._lengths[slot] = offsets[i + 1] - offsets[i];
+                }
+            }
+        } catch (BufferUnderflowException excp) {
+            throw new IllegalArgumentException("Truncated bitmap index");
+        }
+        result._file = in;
+        return result;
+    }
+
+    /**
+     * Return the bitmaps of the shared .gitlet directory DIR with the
+     * graph made to include every commit reachable from TIPS, read with
+     * READER if the graph lacks them; nothing is written.
+     * @param dir File the shared .gitlet directory
+     * @param tips Collection of commit uids
+     * @param reader Function from uid to Commit
+     * @return Reachability the bitmaps
+     */
+    static Reachability of(File dir, Collection<String> tips,
+                           Function<String, Commit> reader) {
+        CommitGraph graph = CommitGraph.read(dir);
+        graph.update(tips, reader);
+        return read(dir, graph);
+    }
+
+    /** Return true iff the commit ANCESTOR is the commit DESCENDANT or
+     *  one of its ancestors.  Commits not in the graph are ancestors of
+     *  nothing. */
+    boolean isAncestor(String ancestor, String descendant) {
+        int a = _graph.position(ancestor);
+        int d = _graph.position(descendant);
+        if (a == CommitGraph.NONE || d == CommitGraph.NONE || a > d) {
+            return false;
+        }
+        Bitmap seen = new Bitmap();
+        IntStack stack = new IntStack();
+        stack.push(d);
+        while (!stack.isEmpty()) {
+            int p = stack.pop();
+            if (p == a) {
+                return true;
+            }
+            if (p < a || seen.contains(p)) {
+                continue;
+            }
+            seen.add(p);
+            Bitmap stored = stored(p);
+            if (stored != null) {
+                if (stored.contains(a)) {
+                    return true;
+                }
+                continue;
+            }
+            pushParents(stack, p);
+        }
+        return false;
+    }
+
+    /** Return the positions of the commits reachable from the one at
+     *  position P, itself included. */
+    Bitmap reachable(int p) {
+        Bitmap result = new Bitmap();
+        IntStack stack = new IntStack();
+        stack.push(p);
+        while (!stack.isEmpty()) {
+            int q = stack.pop();
+            if (result.contains(q)) {
+                continue;
+            }
+            Bitmap stored = stored(q);
+            if (stored != null) {
+                result.or(stored);
+            } else {
+                result.add(q);
+                pushParents(stack, q);
+            }
+        }
+        return result;
+    }
+
+    /** Return the uids of the commits reachable from the commit TIP and
+     *  not from the commit OTHER, both in the graph, parents before
+     *  children. */
+    List<String> reachableOnly(String tip, String other) {
+        Bitmap only = reachable(_graph.position(tip))
+            .andNot(reachable(_graph.position(other)));
+        List<String> result = new ArrayList<>();
+        only.forEach(p -> result.add(_graph.id(p)));
+        return result;
+    }
+
+    /**
+     * Return the uid of the common ancestor of the commits FROM and
+     * OTHER nearest to FROM, counting a step to a first parent as one
+     * and to a second parent as two; the nearest of several is the
+     * newest.  Both commits are in the graph.  As every parent comes
+     * before its child, one pass down the positions from FROM finds
+     * the distance of each of its ancestors, and the ancestors of OTHER
+     * are one bitmap.
+     * @param from String the uid of the commit distances are from
+     * @param other String the uid of the other commit
+     * @return String the uid of the split point
+     */
+    String mergeBase(String from, String other) {
+        int start = _graph.position(from);
+        Bitmap common = reachable(_graph.position(other));
+        int[] distance = new int[start + 1];
+        Arrays.fill(distance, Integer.MAX_VALUE);
+        _walked = distance.length;
+        distance[start] = 0;
+        int best = CommitGraph.NONE;
+        for (int p = start; p >= 0; p -= 1) {
+            int d = distance[p];
+            if (d == Integer.MAX_VALUE) {
+                continue;
+            }
+            if (common.contains(p)
+                && (best == CommitGraph.NONE || d < distance[best])) {
+                best = p;
+            }
+            int parent = _graph.parent(p);
+            if (parent != CommitGraph.NONE) {
+                distance[parent] = Math.min(distance[parent], d + 1);
+            }
+            parent = _graph.secondParent(p);
+            if (parent != CommitGraph.NONE) {
+                distance[parent] = Math.min(distance[parent], d + 2);
+            }
+        }
+        return best == CommitGraph.NONE ? null : _graph.id(best);
+    }
+
+    /** Return the number of positions the last mergeBase() passed
+     *  over. */
+    int walked() {
+        return _walked;
+    }
+
+    /** Make the bitmaps of the positions that should have one and do
+     *  not yet, oldest first so each builds on the last; return true if
+     *  there were any, or if there is no file yet. */
+    boolean update() {
+        boolean changed = _file == null;
+        for (int slot = 0; slot < _bitmaps.length; slot += 1) {
+            if (_offsets[slot] < 0 && _bitmaps[slot] == null) {
+                _bitmaps[slot] = reachable(position(slot));
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /** Write the bitmaps back to their file, replacing it in one step. */
+    void write() {
+        int n = 0;
+        int size = 12;
+        for (int slot = 0; slot < _bitmaps.length; slot += 1) {
+            if (_offsets[slot] >= 0) {
+                n += 1;
+                size += 8 + _lengths[slot];
+            } else if (_bitmaps[slot] != null) {
+                n += 1;
+                size += 8 + _bitmaps[slot].byteSize();
+            }
+        }
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.putInt(MAGIC);
+        out.putInt(VERSION);
+        out.putInt(n);
+        int offset = 12 + 8 * n;
+        for (int slot = 0; slot < _bitmaps.length; slot += 1) {
+            if (_offsets[slot] >= 0 || _bitmaps[slot] != null) {
+                out.putInt(position(slot));
+                out.putInt(offset);
+                offset += _offsets[slot] >= 0 ? _lengths[slot]
+                    : _bitmaps[slot].byteSize();
+            }
+        }
+        for (int slot = 0; slot < _bitmaps.length; slot += 1) {
+            if (_offsets[slot] >= 0) {
+                ByteBuffer old = _file.duplicate();
+                old.position(_offsets[slot]);
+                old.limit(_offsets[slot] + _lengths[slot]);
+                out.put(old);
+            } else if (_bitmaps[slot] != null) {
+                _bitmaps[slot].write(out);
+            }
+        }
+        Utils.replaceContents(new File(_dir, FILE), out.array());
+    }
+
+    /** Return the bitmap of position P, or null if it has none. */
+    private Bitmap stored(int p) {
+        int slot = slot(p);
+        if (slot < 0 || slot >= _bitmaps.length) {
+            return null;
+        }
+        if (_bitmaps[slot] == null && _offsets[slot] >= 0) {
+            ByteBuffer in = _file.duplicate();
+            in.position(_offsets[slot]);
+            _bitmaps[slot] = Bitmap.read(in);
+        }
+        return _bitmaps[slot];
+    }
+
+    /** Return the slot of position P, or -1 if P is not given a
+     *  bitmap. */
+    private static int slot(int p) {
+        return (p + 1) % INTERVAL == 0 ? (p + 1) / INTERVAL - 1 : -1;
+    }
+
+    /** Return the position whose bitmap is in slot SLOT. */
+    private static int position(int slot) {
+        return (slot + 1) * INTERVAL - 1;
+    }
+
+    /** Push onto STACK the parents of the commit at position P. */
+    private void pushParents(IntStack stack, int p) {
+        if (_graph.secondParent(p) != CommitGraph.NONE) {
+            stack.push(_graph.secondParent(p));
+        }
+        if (_graph.parent(p) != CommitGraph.NONE) {
+            stack.push(_graph.parent(p));
+        }
+    }
+
+    /** A stack of ints, without boxing. */
+    private static class IntStack {
+
+        /** The ints, bottom first. */
+        private int[] _items = new int[64];
+
+        /** Number of ints. */
+        private int _size;
+
+        /** Return true if the stack is empty. */
+        boolean isEmpty() {
+            return _size == 0;
+        }
+
+        /** Push X. */
+        void push(int x) {
+            if (_size == _items.length) {
+                _items = Arrays.copyOf(_items, 2 * _size);
+            }
+            _items[_size] = x;
+            _size += 1;
+        }
+
+        /** Pop and return the top int. */
+        int pop() {
+            _size -= 1;
+            return _items[_size];
+        }
+    }
+}
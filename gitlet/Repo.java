@@ -2,12 +2,20 @@ package gitlet;
 
 import java.io.File;
 import java.io.Serializable;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 
 /** The main class repo for Gitlet. It contains all commands' implementation.
@@ -15,15 +23,15 @@ import java.util.Objects;
  */
 public class Repo implements Serializable {
 
-    /**
-     * The current working directory, File type.
-     */
-    private final File cwd = new File(System.getProperty("user.dir"));
+    /** Kept equal to the original class so existing repos still load. */
+    private static final long serialVersionUID = -2954818465534427151L;
 
-    /**
-     * The current working directory, String type.
-     */
-    private final String cwdString = System.getProperty("user.dir");
+    /** Current layout of blob ids, see migrate(). */
+    private static final int BLOB_FORMAT = 1;
+
+    /** The file of the shared .gitlet directory listing the .gitlet
+     *  directories of its worktrees, one a line. */
+    private static final String WORKTREES = "worktrees";
 
     /**
      * The structure is used to store the head of each branch,
@@ -53,16 +61,43 @@ public class Repo implements Serializable {
     private ArrayList<String> _removedFiles;
 
     /**
-     * Global variable stores the data used for
-     * resurion in dfsForSplitCommit() method.
+     * Remotes known to this repository, key is the remote name, value
+     * is the path of its .gitlet directory.  Null in repositories made
+     * before remotes existed.
      */
-    private HashMap<Commit, Integer> cCommits = new HashMap<Commit, Integer>();
+    private HashMap<String, String> _remotes;
 
     /**
-     * Global variable stores the data used for
-     * resurion in dfsForSplitCommit() method.
+     * Layout of the blob ids in this repository: 0 for repositories
+     * whose ids mixed in the file name, BLOB_FORMAT once migrated.
      */
-    private HashMap<Commit, Integer> gCommits = new HashMap<Commit, Integer>();
+    private int _blobFormat;
+
+    /**
+     * The branch heads as they were read by load(), or null for a
+     * repository not read from disk.  If save() finds every head among
+     * them, the CommitGraph already has all their commits.
+     */
+    private transient HashSet<String> _savedTips;
+
+    /** Largest number of commits kept in COMMIT_CACHE. */
+    private static final int COMMIT_CACHE_SIZE = 1024;
+
+    /**
+     * Commits recently read by uidToCommit, by uid, least recently used
+     * first.  Commits never change once written and their uids are
+     * their hashes, so one cache serves every Repo and thread of the
+     * process; callers copy a commit's blobs before changing them.
+     * Guarded by itself.
+     */
+    private static final LinkedHashMap<String, Commit> COMMIT_CACHE =
+        new LinkedHashMap<String, Commit>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, Commit> eldest) {
+                return size() > COMMIT_CACHE_SIZE;
+            }
+        };
 
     /**
      * Return the head commit's uid of current branch.
@@ -72,64 +107,283 @@ public class Repo implements Serializable {
         return _branches.get(_head);
     }
 
+    /**
+     * Return the name of the current branch.
+     * @return String branch name
+     */
+    public String getCurrentBranch() {
+        return _head;
+    }
+
+    /**
+     * Return a copy of the branches, from name to head commit uid.
+     * @return Map from branch name to uid
+     */
+    public Map<String, String> getBranches() {
+        return new HashMap<String, String>(_branches);
+    }
+
+    /**
+     * Point the branch NAME, which may be new, at the commit UID.
+     * @param name String the branch name
+     * @param uid String the commit hashID
+     */
+    void setBranch(String name, String uid) {
+        _branches.put(name, uid);
+    }
+
     /**
      * Constructor.
      */
     public Repo() {
-        if (!Files.exists(Paths.get(".gitlet"))) {
+        if (new File(".gitlet").mkdir()) {
             Commit initial = new Commit("initial commit");
-            File gitlet = new File(".gitlet");
-            File commits = new File(".gitlet/commits");
-            File staging = new File(".gitlet/staging");
-            gitlet.mkdir();
-            commits.mkdir();
-            staging.mkdir();
+            ObjectStore.commitDir().mkdir();
+            ObjectStore.blobDir().mkdir();
+            ObjectStore.treeDir().mkdir();
             String id = initial.getUid();
-            File initialFile = new File(".gitlet/commits/" + id);
-            Utils.writeContents(initialFile, (Object) Utils.serialize(initial));
+            File initialFile = ObjectStore.commitFile(id);
+            WriteBatch.write(initialFile, Utils.serialize(initial));
             _head = "master";
             _branches = new HashMap<String, String>();
             _branches.put("master", initial.getUid());
             _stagingArea = new HashMap<String, Blob>();
             _removedFiles = new ArrayList<String>();
+            _blobFormat = BLOB_FORMAT;
         } else {
-            System.out.println("A Gitlet version-control "
+            throw new GitletException("A Gitlet version-control "
                     + "system already exists in the "
                     + "current directory");
         }
     }
 
+    /**
+     * Constructor used by clone and worktree: a repository with nothing
+     * staged whose head is HEAD, among BRANCHES.
+     * @param head String the name of the current branch
+     * @param branches HashMap the branches, copied
+     * @param blobFormat int the layout of the blob ids
+     */
+    private Repo(String head, HashMap<String, String> branches,
+                 int blobFormat) {
+        _head = head;
+        _branches = new HashMap<String, String>(branches);
+        _stagingArea = new HashMap<String, Blob>();
+        _removedFiles = new ArrayList<String>();
+        _blobFormat = blobFormat;
+    }
+
+    /**
+     * Read the repository whose working tree is the current directory.
+     * The branches are shared by every worktree of a repository, so they
+     * are kept apart from the head and staging area, in the file "refs"
+     * of the shared .gitlet directory.  A worktree's own .gitlet
+     * directory names the shared one in its file "commondir".
+     * @return Repo the repository, or null if there is none
+     */
+    public static Repo load() {
+        File repoFile = new File(".gitlet/repo");
+        if (!repoFile.exists()) {
+            return null;
+        }
+        findRoot();
+        Repo repo = Utils.readObject(repoFile, Repo.class);
+        repo._branches = readBranches(ObjectStore.root());
+        repo._savedTips = new HashSet<String>(repo._branches.values());
+        return repo;
+    }
+
+    /**
+     * Point the ObjectStore at the shared .gitlet directory of the
+     * repository whose working tree is the current directory, which is
+     * the current one's own unless it is a worktree.
+     * @return File the shared .gitlet directory
+     */
+    static File findRoot() {
+        File common = new File(".gitlet/commondir");
+        if (common.isFile()) {
+            String path = Utils.readContentsAsString(common).trim();
+            ObjectStore.setRoot(new File(path));
+        }
+        return ObjectStore.root();
+    }
+
+    /**
+     * Write this repository back: the branches to the shared .gitlet
+     * directory and the head and staging area to the current one.  Each
+     * file is replaced whole, so readers never see a partial write;
+     * callers hold the RepoLock, so no other writer is overwritten.
+     * The objects of the WriteBatch are made durable first, then the
+     * commits new to the branches are added to the CommitGraph and its
+     * Reachability bitmaps, and the branches are written last, so that
+     * after a crash they name only complete commits.
+     */
+    public void save() {
+        WriteBatch.sync();
+        File root = ObjectStore.root();
+        if (_savedTips == null || !_savedTips.containsAll(_branches.values())
+            || !new File(root, CommitGraph.FILE).isFile()
+            || !new File(root, Reachability.FILE).isFile()) {
+            updateGraph(root, _branches.values(), Repo::lookup);
+        }
+        Utils.replaceObject(new File(".gitlet/repo"), this);
+        Utils.replaceObject(new File(ObjectStore.root(), "refs"), _branches);
+    }
+
+    /**
+     * Add the commits reachable from TIPS to the CommitGraph of the
+     * shared .gitlet directory DIR, reading them with READER, and write
+     * it back if that added any; then add the Reachability bitmaps the
+     * new positions call for.
+     * @param dir File the shared .gitlet directory
+     * @param tips Collection of commit uids
+     * @param reader Function from uid to Commit
+     */
+    private static void updateGraph(File dir, Collection<String> tips,
+                                    Function<String, Commit> reader) {
+        try (Trace.Phase graph = Trace.phase("graph")) {
+            CommitGraph commits = CommitGraph.read(dir);
+            if (commits.update(tips, reader)) {
+                commits.write();
+            }
+            Reachability bitmaps = Reachability.read(dir, commits);
+            if (bitmaps.update()) {
+                bitmaps.write();
+            }
+        }
+    }
+
+    /**
+     * Return the branches of the repository whose shared .gitlet
+     * directory is DIR.  Repositories written before the branches moved
+     * to their own file still keep them in the serialized Repo.
+     * @param dir File the shared .gitlet directory
+     * @return HashMap from branch name to head commit uid
+     */
+    @SuppressWarnings("unchecked")
+    static HashMap<String, String> readBranches(File dir) {
+        File refs = new File(dir, "refs");
+        if (refs.isFile()) {
+            return Utils.readObject(refs, HashMap.class);
+        }
+        return Utils.readObject(new File(dir, "repo"), Repo.class)._branches;
+    }
+
+    /**
+     * Return the working directory, which is the current directory.
+     * @return File the working directory
+     */
+    static File cwd() {
+        return new File(System.getProperty("user.dir"));
+    }
+
+    /**
+     * The clone operation.  Creates a repository in the current
+     * directory with the history of the one at PATH: its objects are
+     * hard-linked, so they take almost no extra space, only the branch
+     * and staging state is copied, and then the head commit is checked
+     * out, with files written in parallel.
+     * @param path String the source working directory or its .gitlet
+     *             directory, using forward slashes as separators
+     * @return Repo the new repository
+     */
+    public static Repo cloneFrom(String path) {
+        File sourceDir = new File(path.replace("/", File.separator));
+        if (!sourceDir.getName().equals(".gitlet")) {
+            sourceDir = new File(sourceDir, ".gitlet");
+        }
+        File sourceRepo = new File(sourceDir, "repo");
+        if (!sourceRepo.isFile()) {
+            throw new NotFoundException("Remote directory not found.");
+        }
+        Repo source = Utils.readObject(sourceRepo, Repo.class);
+        File gitlet = new File(".gitlet");
+        gitlet.mkdir();
+        Transfer.linkAll(sourceDir, gitlet);
+        Repo repo = new Repo(source._head, readBranches(sourceDir),
+                             source._blobFormat);
+        repo._remotes = new HashMap<String, String>();
+        repo._remotes.put("origin", sourceDir.getPath());
+        Map<String, Blob> blobs = repo.uidToCommit(repo.getHead())
+            .getBlobs();
+        if (blobs != null) {
+            blobs.values().parallelStream().forEach(blob ->
+                repo.restoreBlob(blob, new File(blob.getName())));
+        }
+        return repo;
+    }
+
     /**
      * The add operation.
      * @param filename String name of the file you added
      */
     public void add(String filename) {
-        if (!new File(filename).exists()) {
-            Utils.message("File does not exist.");
-            throw new GitletException();
+        add(Collections.singletonList(filename));
+    }
+
+    /**
+     * The add operation for many files at once.  PATHS name files or
+     * directories, whose files at any depth are added.  The files are
+     * hashed in parallel by the Stager; then the head commit is read
+     * once and each file whose contents it does not already track is
+     * stored and staged.  Under a WorkTreeWatcher, the ids hashed are
+     * remembered, and files known to be as the head commit has them,
+     * and neither staged nor removed, are not hashed at all.
+     * @param paths List of file and directory names
+     */
+    public void add(List<String> paths) {
+        for (String path : paths) {
+            if (!new File(path).exists()) {
+                throw new NotFoundException("File does not exist.");
+            }
+        }
+        Map<String, Blob> files = uidToCommit(getHead()).getBlobs();
+        WorkTreeWatcher watcher = WorkTreeWatcher.active(cwd());
+        Predicate<String> skip = name -> false;
+        if (watcher != null && files != null) {
+            skip = name -> {
+                Blob tracked = files.get(name);
+                return tracked != null && !tracked.isChunked()
+                    && !_stagingArea.containsKey(name)
+                    && !_removedFiles.contains(name)
+                    && tracked.getHashID().equals(watcher.knownId(name));
+            };
         }
+        long started = System.currentTimeMillis();
+        List<Blob> blobs = Stager.hash(paths, IgnoreRules.of(cwd()), skip);
+        for (Blob blob : blobs) {
+            if (watcher != null && !blob.isChunked()) {
+                watcher.remember(blob.getName(), blob.getHashID(), started);
+            }
+            stage(blob, files);
+        }
+    }
+
+    /**
+     * Stage BLOB, a file just hashed, unless the head commit, which
+     * tracks FILES, has the same contents for it.
+     * @param blob Blob the file
+     * @param files Map the files of the head commit, or null
+     */
+    private void stage(Blob blob, Map<String, Blob> files) {
+        String filename = blob.getName();
         _removedFiles.remove(filename);
-        Blob blob = new Blob(filename);
         String blobHashID = blob.getHashID();
-        Commit lastCommit = uidToCommit(getHead());
-        HashMap<String, Blob> files = lastCommit.getBlobs();
-        File stagingblob = new File(".gitlet/staging/" + blobHashID);
+        File stagingblob = ObjectStore.blobFile(blobHashID);
         boolean alreadyAdded = false;
         boolean emptyBlobs = false;
         if (files == null) {
             emptyBlobs = true;
         } else {
-            for (Blob temp : files.values()) {
-                if (temp.getHashID().equals(blobHashID)) {
-                    alreadyAdded = true;
-                    break;
-                }
-            }
+            Blob tracked = files.get(filename);
+            alreadyAdded = tracked != null
+                && tracked.getHashID().equals(blobHashID);
         }
         if (!alreadyAdded || emptyBlobs) {
             _stagingArea.put(filename, blob);
-            String contents = Utils.readContentsAsString(new File(filename));
-            Utils.writeContents(stagingblob, contents);
+            if (!blob.isChunked()) {
+                ObjectStore.putBlob(new File(filename), blobHashID);
+            }
         } else {
             if (stagingblob.exists()) {
                 _stagingArea.remove(filename);
@@ -143,37 +397,44 @@ public class Repo implements Serializable {
      */
     public void commit(String msg) {
         if (msg.trim().equals("")) {
-            Utils.message("Please enter a commit message.");
-            throw new GitletException();
+            throw new GitletException("Please enter a commit message.");
         }
         Commit lastCommit = uidToCommit(getHead());
-        HashMap<String, Blob> trackedFiles = lastCommit.getBlobs();
-        if (trackedFiles == null) {
-            trackedFiles = new HashMap<String, Blob>();
-        }
-        if (_stagingArea.size() != 0 || _removedFiles.size() != 0) {
-            for (String fileName : _stagingArea.keySet()) {
-                trackedFiles.put(fileName, _stagingArea.get(fileName));
-            }
-            for (String fileName : _removedFiles) {
-                trackedFiles.remove(fileName);
-            }
-        } else {
-            Utils.message("No changes added to the commit.");
-            throw new GitletException();
-        }
+        FileTree trackedFiles = stagedTree(lastCommit);
         String[] parent = new String[]{lastCommit.getUid()};
         String branch = _head;
         Commit newCommit = new Commit(msg, parent, branch, trackedFiles);
+        trackedFiles.store();
         String s = newCommit.getUid();
-        File newCommFile = new File(".gitlet/commits/" + s);
-        Utils.writeObject(newCommFile, newCommit);
+        File newCommFile = ObjectStore.commitFile(s);
+        WriteBatch.write(newCommFile, Utils.serialize(newCommit));
 
         _stagingArea = new HashMap<String, Blob>();
         _removedFiles = new ArrayList<String>();
         _branches.put(_head, newCommit.getUid());
     }
 
+    /**
+     * Return the tree of the files of LASTCOMMIT with the staged files
+     * added and the removed ones taken out; it shares every node the
+     * changes leave alone with the tree of LASTCOMMIT.
+     * @param lastCommit Commit the head commit
+     * @return FileTree the files of the next commit
+     */
+    private FileTree stagedTree(Commit lastCommit) {
+        if (_stagingArea.size() == 0 && _removedFiles.size() == 0) {
+            throw new GitletException("No changes added to the commit.");
+        }
+        FileTree trackedFiles = FileTree.of(lastCommit.getBlobs());
+        for (Blob blob : _stagingArea.values()) {
+            trackedFiles = trackedFiles.with(blob);
+        }
+        for (String fileName : _removedFiles) {
+            trackedFiles = trackedFiles.without(fileName);
+        }
+        return trackedFiles;
+    }
+
     /**
      * The commit operation for merge.
      * @param msg String the commit message
@@ -181,30 +442,16 @@ public class Repo implements Serializable {
      */
     public void commit(String msg, String[] parents) {
         if (msg.trim().equals("")) {
-            Utils.message("Please enter a commit message.");
-            throw new GitletException();
+            throw new GitletException("Please enter a commit message.");
         }
         Commit lastCommit = uidToCommit(getHead());
-        HashMap<String, Blob> trackedFiles = lastCommit.getBlobs();
-        if (trackedFiles == null) {
-            trackedFiles = new HashMap<String, Blob>();
-        }
-        if (_stagingArea.size() != 0 || _removedFiles.size() != 0) {
-            for (String fileName : _stagingArea.keySet()) {
-                trackedFiles.put(fileName, _stagingArea.get(fileName));
-            }
-            for (String fileName : _removedFiles) {
-                trackedFiles.remove(fileName);
-            }
-        } else {
-            Utils.message("No changes added to the commit.");
-            throw new GitletException();
-        }
+        FileTree trackedFiles = stagedTree(lastCommit);
         String branch = lastCommit.getBranchName();
         Commit newCommit = new Commit(msg, parents, branch, trackedFiles);
+        trackedFiles.store();
         String s = newCommit.getUid();
-        File newCommFile = new File(".gitlet/commits/" + s);
-        Utils.writeObject(newCommFile, newCommit);
+        File newCommFile = ObjectStore.commitFile(s);
+        WriteBatch.write(newCommFile, Utils.serialize(newCommit));
 
         _stagingArea = new HashMap<String, Blob>();
         _removedFiles = new ArrayList<String>();
@@ -212,184 +459,83 @@ public class Repo implements Serializable {
     }
 
     /**
-     * The log operation.
+     * The fsck operation: check every stored object, walking from the
+     * branches and the staged files.
+     * @return FsckReport the missing, corrupt and dangling objects
      */
-    public void log() {
-        String head = getHead();
-        while (head != null) {
-            Commit first = uidToCommit(head);
-            if (first.getParentid() != null && first.getParentid().length > 1) {
-                System.out.println("===");
-                System.out.println("commit " + head);
-                String short1 = first.getParentid()[0].substring(0, 7);
-                String short2 = first.getParentid()[1].substring(0, 7);
-                System.out.println("Merge: " + short1 + " " + short2);
-                System.out.println("Date: " + first.getTimestamp());
-                System.out.println(first.getMessage());
-                System.out.println();
-            } else {
-                System.out.println("===");
-                System.out.println("commit " + head);
-                System.out.println("Date: " + first.getTimestamp());
-                System.out.println(first.getMessage());
-                System.out.println();
-            }
-            head = first.getParentID();
-        }
+    public FsckReport fsck() {
+        return new Fsck(ObjectStore.root(), _blobFormat >= BLOB_FORMAT)
+            .run(_branches.values(), _stagingArea.values());
     }
 
     /**
-     * the global-log operation.
+     * The status operation.  Status reports the branches and the staged
+     * and removed files, which the Repo holds, so the working tree is
+     * not read at all.
+     * @return Status the branches, staged and removed files
      */
-    public void globalLog() {
-        File commitDir = new File(".gitlet/commits");
-        for (File commitFile : Objects.requireNonNull(commitDir.listFiles())) {
-            String uid = commitFile.getName();
-            Commit temp = uidToCommit(uid);
-            if (temp.getParentid() != null && temp.getParentid().length > 1) {
-                System.out.println("===");
-                System.out.println("commit " + uid);
-                String short1 = temp.getParentid()[0].substring(0, 7);
-                String short2 = temp.getParentid()[1].substring(0, 7);
-                System.out.println("Merge: " + short1 + " " + short2);
-                System.out.println("Date: " + temp.getTimestamp());
-                System.out.println(temp.getMessage());
-                System.out.println();
-            } else {
-                System.out.println("===");
-                System.out.println("commit " + uid);
-                System.out.println("Date: " + temp.getTimestamp());
-                System.out.println(temp.getMessage());
-                System.out.println();
-            }
-        }
-
+    public Status status() {
+        return new Status(_head, _branches.keySet(), _stagingArea.keySet(),
+                          _removedFiles);
     }
 
-    /**
-     * The status operation.
-     */
-    public void status() {
-        System.out.println("=== Branches ===");
-        Object[] keys = _branches.keySet().toArray();
-        Arrays.sort(keys);
-        for (Object branch : keys) {
-            if (branch.equals(_head)) {
-                System.out.println("*" + branch);
-            } else {
-                System.out.println(branch);
-            }
-        }
-        System.out.println();
-        System.out.println("=== Staged Files ===");
-        Object[] stages = _stagingArea.keySet().toArray();
-        Arrays.sort(stages);
-        for (Object staged : stages) {
-            System.out.println(staged);
-        }
-        System.out.println();
-        System.out.println("=== Removed Files ===");
-        Object[] removeds = _removedFiles.toArray();
-        Arrays.sort(removeds);
-        for (Object removed : removeds) {
-            System.out.println(removed);
-        }
-
-
-        ArrayList<File> modify = new ArrayList<File>();
-        ArrayList<File> untrack = new ArrayList<File>();
-        ArrayList<File> deleted = new ArrayList<File>();
-        String head = _branches.get(_head);
-        stateDetect(head, modify, untrack, deleted);
-
-        System.out.println("\n=== Modifications Not Staged For Commit ===");
-
-        System.out.println("\n=== Untracked Files ===");
-        System.out.println();
-
-
-    }
-
-    /** StateDetect function is to detect state information.
+    /** StateDetect function is to detect state information: the files
+     *  of the working tree the commit COMMITHASH does not track, those it
+     *  tracks with other contents, and those it tracks that are gone.
+     *  Each file is looked up by name, and under a WorkTreeWatcher only
+     *  files changed since last hashed are hashed again.
      * @param commitHash is path of the commit state.
      * @param modify is modified files.
      * @param untrack is untracked files.
      * @param delete is deleted files.*/
     public void stateDetect(String commitHash, ArrayList<File> modify,
                             ArrayList<File> untrack, ArrayList<File> delete) {
-        HashMap<String, Blob> curentBlobs = uidToCommit(commitHash).getBlobs();
-        ArrayList<File> cwdDirAll = new ArrayList<>();
-        for (File file : Objects.requireNonNull(cwd.listFiles())) {
-            if (!file.isDirectory()) {
-                cwdDirAll.add(file);
+        Object event = Events.begin(Events.DIRECTORY_SCAN);
+        Map<String, Blob> curentBlobs = uidToCommit(commitHash).getBlobs();
+        WorkTreeWatcher watcher = WorkTreeWatcher.active(cwd());
+        List<String> cwdDirAll = workingFiles(cwd(), watcher);
+        Set<String> present = new HashSet<String>();
+        for (String name : cwdDirAll) {
+            File file = new File(name);
+            present.add(name);
+            Blob blob = curentBlobs == null ? null : curentBlobs.get(name);
+            if (blob == null) {
+                untrack.add(file);
+            } else if (watcher == null
+                       ? !ObjectStore.sameContents(blob, file)
+                       : !watcher.sameContents(blob, name)) {
+                modify.add(file);
             }
         }
-        boolean untrackedFlag = true;
-
-        if (!cwdDirAll.isEmpty()) {
-            if (curentBlobs == null) {
-                untrack.addAll(cwdDirAll);
-            } else {
-                for (File file : cwdDirAll) {
-                    String contents = Utils.readContentsAsString(file);
-                    for (Blob blob : curentBlobs.values()) {
-                        if (blob.getName().equals(file.getName())) {
-                            untrackedFlag = false;
-                            if (!blob.getContentsAsString().equals(contents)) {
-                                modify.add(file);
-                            }
-                        }
-                        if (untrackedFlag) {
-                            untrack.add(file);
-                        }
-                    }
-                }
-            }
-        } else {
-            if (curentBlobs != null) {
-                for (Blob blob : curentBlobs.values()) {
-                    File temp = new File(blob.getName());
-                    delete.add(temp);
+        if (curentBlobs != null) {
+            for (String name : curentBlobs.keySet()) {
+                if (!present.contains(name)) {
+                    delete.add(new File(name));
                 }
             }
         }
+        Events.end(event, commitHash, 0, cwdDirAll.size());
     }
 
     /**
-     * The checkout opertion, takes in a Arraylist<String> ARGS.
-     * @param args ArrayList of the input _operand
+     * Check out the file FILENAME as the commit COMMID, which may be
+     * abbreviated, has it.
+     * @param commID String the commit uid, or null for the head commit
+     * @param fileName String the name of the file
      */
-    public void checkout(ArrayList<String> args) {
-        String commID;
-        String fileName;
-        if (args.size() == 2 && args.get(0).equals("--")) {
-            fileName = args.get(1);
-            commID = getHead();
-        } else if (args.size() == 3 && args.get(1).equals("--")) {
-            commID = args.get(0);
-            fileName = args.get(2);
-        } else {
-            Utils.message("Incorrect operands");
-            throw new GitletException();
-        }
-        commID = shortToLong(commID);
+    public void checkoutFile(String commID, String fileName) {
+        commID = shortToLong(commID == null ? getHead() : commID);
         Commit comm = uidToCommit(commID);
-        HashMap<String, Blob> trackedFiles = comm.getBlobs();
+        Map<String, Blob> trackedFiles = comm.getBlobs();
         boolean find = false;
         for (Blob blob : trackedFiles.values()) {
             if (blob.getName().equals(fileName)) {
-                File f = new File(fileName);
-                String p = ".gitlet/staging/";
-                String blobFileName = p + blob.getHashID();
-                File g = new File(blobFileName);
-                String contents = Utils.readContentsAsString(g);
-                Utils.writeContents(f, contents);
+                restoreBlob(blob, new File(fileName));
                 find = true;
             }
         }
         if (!find) {
-            Utils.message("File does not exist in that commit.");
-            throw new GitletException();
+            throw new NotFoundException("File does not exist in that commit.");
         }
     }
 
@@ -399,44 +545,26 @@ public class Repo implements Serializable {
      */
     public void checkout(String branchName) {
         if (!_branches.containsKey(branchName)) {
-            Utils.message("No such branch exists.");
-            throw new GitletException();
+            throw new NotFoundException("No such branch exists.");
         }
         if (_head.equals(branchName)) {
-            String s = "No need to checkout the current branch.";
-            Utils.message(s);
-            throw new GitletException();
+            throw new GitletException(
+                "No need to checkout the current branch.");
         }
         String commID = _branches.get(branchName);
         Commit comm = uidToCommit(commID);
-        HashMap<String, Blob> blobs = comm.getBlobs();
-        checkForUntracked(cwd);
-
-        for (File file : Objects.requireNonNull(cwd.listFiles())) {
-            if (file.getName().equals(".DS_Store")
-                    || file.getName().equals(".gitignore")
-                    || file.getName().equals("proj3.iml")
-                    || file.getName().equals("Makefile")) {
-                continue;
-            }
-            if (file.isDirectory()) {
-                continue;
-            }
-            if (!file.getName().equals(".gitlet")) {
-                if (!Utils.restrictedDelete(file)) {
-                    Utils.message("Can not delete file" + file.getName());
-                    throw new GitletException();
-                }
+        Map<String, Blob> blobs = comm.getBlobs();
+        checkForUntracked(cwd());
+
+        for (String name
+                 : workingFiles(cwd(), WorkTreeWatcher.active(cwd()))) {
+            if (!deleteWorkingFile(name)) {
+                throw new GitletException("Can not delete file" + name);
             }
         }
         if (blobs != null) {
             for (Blob blob : blobs.values()) {
-                String fileDir = blob.getName();
-                String blobhash = blob.getHashID();
-                File blobfile = new File(".gitlet/staging/" + blobhash);
-                File file = new File(fileDir);
-                String contents = Utils.readContentsAsString(blobfile);
-                Utils.writeContents(file, contents);
+                restoreBlob(blob, new File(blob.getName()));
             }
         }
         _stagingArea = new HashMap<String, Blob>();
@@ -444,6 +572,20 @@ public class Repo implements Serializable {
         _head = branchName;
     }
 
+    /**
+     * Write the contents of BLOB to FILE, streamed unchanged from the
+     * object store, creating the directory FILE is in if need be.
+     * @param blob Blob the tracked version of the file
+     * @param file File the working file to create or overwrite
+     */
+    private void restoreBlob(Blob blob, File file) {
+        File dir = file.getParentFile();
+        if (dir != null) {
+            dir.mkdirs();
+        }
+        ObjectStore.copyTo(blob, file);
+    }
+
     /**
      * The remove opertion.
      * @param fileName String the name of file you want to remove.
@@ -451,7 +593,7 @@ public class Repo implements Serializable {
     public void rm(String fileName) {
         File file = new File(fileName);
         Commit lastCommit = uidToCommit(getHead());
-        HashMap<String, Blob> trackedFiles = lastCommit.getBlobs();
+        Map<String, Blob> trackedFiles = lastCommit.getBlobs();
         boolean flag = false;
         if (trackedFiles != null) {
             for (String blobHash : trackedFiles.keySet()) {
@@ -464,8 +606,7 @@ public class Repo implements Serializable {
             }
         }
         if (!file.exists() && !flag) {
-            Utils.message("File does not exist.");
-            throw new GitletException();
+            throw new NotFoundException("File does not exist.");
         }
         boolean changed = false;
         if (_stagingArea.containsKey(fileName)) {
@@ -474,13 +615,277 @@ public class Repo implements Serializable {
         }
         if (flag) {
             _removedFiles.add(fileName);
-            File toRemove = new File(fileName);
-            Utils.restrictedDelete(toRemove);
+            deleteWorkingFile(fileName);
             changed = true;
         }
         if (!changed) {
-            Utils.message("No reason to remove the file.");
-            throw new GitletException();
+            throw new GitletException("No reason to remove the file.");
+        }
+    }
+
+    /**
+     * The add-remote operation.
+     * @param name String the name to give the remote
+     * @param dir String the path of the remote's .gitlet directory,
+     *            using forward slashes as separators
+     */
+    public void addRemote(String name, String dir) {
+        if (_remotes == null) {
+            _remotes = new HashMap<String, String>();
+        }
+        if (_remotes.containsKey(name)) {
+            throw new GitletException(
+                "A remote with that name already exists.");
+        }
+        _remotes.put(name, dir.replace("/", File.separator));
+    }
+
+    /**
+     * The rm-remote operation.
+     * @param name String the name of the remote to forget
+     */
+    public void rmRemote(String name) {
+        if (_remotes == null || !_remotes.containsKey(name)) {
+            throw new NotFoundException(
+                "A remote with that name does not exist.");
+        }
+        _remotes.remove(name);
+    }
+
+    /**
+     * The fetch operation.  Copies the commits of branch BRANCH of the
+     * remote that this repository lacks, and the objects they track,
+     * and points the local branch REMOTE/BRANCH at its head.
+     * @param remote String the name of the remote
+     * @param branch String the name of the branch in the remote
+     */
+    public void fetch(String remote, String branch) {
+        File remoteDir = remoteDir(remote);
+        String tip = readBranches(remoteDir).get(branch);
+        if (tip == null) {
+            throw new NotFoundException(
+                "That remote does not have that branch.");
+        }
+        Transfer.copy(remoteDir, ObjectStore.root(), tip);
+        _branches.put(remote + "/" + branch, tip);
+    }
+
+    /**
+     * The push operation.  Copies the commits of the current branch that
+     * the remote lacks, and the objects they track, and moves the remote
+     * branch BRANCH to the current head.  Refused unless the remote
+     * branch's head is in the history of the current head.
+     * @param remote String the name of the remote
+     * @param branch String the name of the branch in the remote
+     */
+    public void push(String remote, String branch) {
+        File remoteDir = remoteDir(remote);
+        HashMap<String, String> branches = readBranches(remoteDir);
+        String remoteTip = branches.get(branch);
+        File local = ObjectStore.root();
+        if (remoteTip != null
+                && !Transfer.isAncestor(local, remoteTip, getHead())) {
+            throw new GitletException(
+                "Please pull down remote changes before pushing.");
+        }
+        try (RepoLock lock = RepoLock.acquire(remoteDir)) {
+            HashMap<String, String> current = readBranches(remoteDir);
+            if (!Objects.equals(current.get(branch), remoteTip)) {
+                throw new GitletException(
+                    "Please pull down remote changes before "
+                    + "pushing.");
+            }
+            Transfer.copy(local, remoteDir, getHead());
+            updateGraph(remoteDir, Collections.singleton(getHead()),
+                uid -> Transfer.readCommit(remoteDir, uid));
+            current.put(branch, getHead());
+            Utils.replaceObject(new File(remoteDir, "refs"), current);
+        }
+    }
+
+    /**
+     * The pull operation: fetch branch BRANCH of REMOTE, then merge
+     * REMOTE/BRANCH into the current branch.
+     * @param remote String the name of the remote
+     * @param branch String the name of the branch in the remote
+     */
+    public void pull(String remote, String branch) {
+        fetch(remote, branch);
+        merge(remote + "/" + branch);
+    }
+
+    /**
+     * Return the .gitlet directory of the remote called NAME, which
+     * must exist.
+     * @param name String the name of the remote
+     * @return File the remote's .gitlet directory
+     */
+    private File remoteDir(String name) {
+        if (_remotes == null || !_remotes.containsKey(name)) {
+            throw new NotFoundException(
+                "A remote with that name does not exist.");
+        }
+        File dir = new File(_remotes.get(name));
+        if (!new File(dir, "repo").isFile()) {
+            throw new NotFoundException("Remote directory not found.");
+        }
+        return dir;
+    }
+
+    /**
+     * The worktree add operation.  Creates a second working tree in DIR
+     * with BRANCHNAME checked out.  It has its own head and staging
+     * area, and shares the commits, objects and branches of this one.
+     * @param dir String the directory of the new working tree, using
+     *            forward slashes as separators
+     * @param branchName String the branch to check out there
+     */
+    public void worktreeAdd(String dir, String branchName) {
+        if (!_branches.containsKey(branchName)) {
+            throw new NotFoundException("No such branch exists.");
+        }
+        List<String> worktrees = worktrees();
+        if (branchName.equals(_head)
+            || checkedOut(ObjectStore.root(), branchName)) {
+            throw new GitletException("That branch is already checked out.");
+        }
+        for (String other : worktrees) {
+            if (checkedOut(new File(other), branchName)) {
+                throw new GitletException(
+                    "That branch is already checked out.");
+            }
+        }
+        File root = new File(dir.replace("/", File.separator));
+        File gitlet = new File(root, ".gitlet");
+        if (gitlet.exists()) {
+            throw new GitletException(
+                "A Gitlet version-control system already "
+                + "exists in that directory.");
+        }
+        gitlet.mkdirs();
+        Utils.writeContents(new File(gitlet, "commondir"),
+                            ObjectStore.root().getAbsolutePath());
+        worktrees.add(gitlet.getAbsolutePath());
+        Utils.writeContents(new File(ObjectStore.root(), WORKTREES),
+                            String.join("\n", worktrees) + "\n");
+        Repo tree = new Repo(branchName, _branches, _blobFormat);
+        Map<String, Blob> blobs =
+            uidToCommit(_branches.get(branchName)).getBlobs();
+        if (blobs != null) {
+            blobs.values().parallelStream().forEach(blob ->
+                restoreBlob(blob, new File(root, blob.getName())));
+        }
+        Utils.writeObject(new File(gitlet, "repo"), tree);
+    }
+
+    /**
+     * Return the .gitlet directories of the worktrees added to this
+     * repository that still exist, as listed in the shared .gitlet
+     * directory.
+     * @return List of absolute paths
+     */
+    private static List<String> worktrees() {
+        List<String> result = new ArrayList<>();
+        File list = new File(ObjectStore.root(), WORKTREES);
+        if (!list.isFile()) {
+            return result;
+        }
+        for (String line : Utils.readContentsAsString(list).split("\n")) {
+            if (!line.isEmpty() && new File(line, "repo").isFile()) {
+                result.add(line);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return true if the working tree whose own .gitlet directory is
+     * GITLET has the branch BRANCHNAME checked out.
+     * @param gitlet File the .gitlet directory of the working tree
+     * @param branchName String the branch
+     * @return boolean true if it is that tree's current branch
+     */
+    private static boolean checkedOut(File gitlet, String branchName) {
+        File repo = new File(gitlet, "repo");
+        return repo.isFile() && branchName.equals(
+            Utils.readObject(repo, Repo.class).getCurrentBranch());
+    }
+
+    /**
+     * The migrate operation.  Rewrites a repository created while blob
+     * ids still depended on the file name so that every blob is named
+     * by its contents alone, merging duplicate objects in the staging
+     * directory, and reports how much space that saved.
+     * @return String the report
+     */
+    public String migrate() {
+        if (_blobFormat >= BLOB_FORMAT) {
+            return "Repository is already up to date.";
+        }
+        File stagingDir = ObjectStore.blobDir();
+        long filesBefore = 0, bytesBefore = 0;
+        for (File f : Objects.requireNonNull(stagingDir.listFiles())) {
+            filesBefore += 1;
+            bytesBefore += f.length();
+        }
+        int rewritten = 0;
+        HashMap<String, String> renamed = new HashMap<>();
+        File commitDir = ObjectStore.commitDir();
+        for (File commitFile : Objects.requireNonNull(commitDir.listFiles())) {
+            Commit c = Utils.readObject(commitFile, Commit.class);
+            if (c.getTreeId() == null && c.getBlobs() != null
+                && !c.getBlobs().isEmpty()) {
+                for (Blob blob : c.getBlobs().values()) {
+                    reidentify(blob, renamed);
+                }
+                Utils.replaceObject(commitFile, c);
+                rewritten += 1;
+            }
+        }
+        FileTree.rewriteLeaves(ObjectStore.root(),
+                               blob -> reidentify(blob, renamed));
+        for (Blob blob : _stagingArea.values()) {
+            reidentify(blob, renamed);
+        }
+        long filesAfter = 0, bytesAfter = 0;
+        for (File f : Objects.requireNonNull(stagingDir.listFiles())) {
+            filesAfter += 1;
+            bytesAfter += f.length();
+        }
+        _blobFormat = BLOB_FORMAT;
+        return String.format("Rewrote %d commits; %d blob objects are now "
+                + "%d, saving %d bytes.", rewritten, filesBefore, filesAfter,
+                bytesBefore - bytesAfter);
+    }
+
+    /**
+     * Give BLOB its content-only id, moving its stored copy in the
+     * staging directory to the new name, or dropping it if a blob
+     * with the same contents is already stored there.
+     * @param blob Blob the blob to rename
+     * @param renamed HashMap from old ids already handled to new ones
+     */
+    private void reidentify(Blob blob, HashMap<String, String> renamed) {
+        String oldID = blob.getHashID();
+        if (renamed.containsKey(oldID)) {
+            blob.setHashID(renamed.get(oldID));
+            return;
+        }
+        File old = ObjectStore.blobFile(oldID);
+        if (!blob.isChunked() && !old.exists()) {
+            return;
+        }
+        String newID = blob.rehash();
+        renamed.put(oldID, newID);
+        File target = ObjectStore.blobFile(newID);
+        if (!old.exists() || old.equals(target)) {
+            return;
+        }
+        if (target.exists()) {
+            old.delete();
+        } else if (!old.renameTo(target)) {
+            throw new GitletException(
+                "Could not rename blob " + old.getName());
         }
     }
 
@@ -492,8 +897,8 @@ public class Repo implements Serializable {
         if (!_branches.containsKey(branchName)) {
             _branches.put(branchName, getHead());
         } else {
-            Utils.message("A branch with that name already exists.");
-            throw new GitletException();
+            throw new GitletException(
+                "A branch with that name already exists.");
         }
     }
 
@@ -503,12 +908,11 @@ public class Repo implements Serializable {
      */
     public void rmbranch(String branchName) {
         if (!_branches.containsKey(branchName)) {
-            Utils.message("A branch with that name does not exist.");
-            throw new GitletException();
+            throw new NotFoundException(
+                "A branch with that name does not exist.");
         }
         if (_head.equals(branchName)) {
-            Utils.message("Cannot remove the current branch.");
-            throw new GitletException();
+            throw new GitletException("Cannot remove the current branch.");
         } else {
             _branches.remove(branchName);
         }
@@ -521,37 +925,17 @@ public class Repo implements Serializable {
     public void reset(String uid) {
         uid = shortToLong(uid);
         Commit c = uidToCommit(uid);
-        HashMap<String, Blob> blobs = c.getBlobs();
-        checkForUntracked(cwd);
-        for (File file : Objects.requireNonNull(cwd.listFiles())) {
-            if (!file.isDirectory()) {
-                if (file.getName().equals(".gitignore")
-                        || file.getName().equals("proj3.iml")
-                        || file.getName().equals("Makefile")) {
-                    continue;
-                }
-                String fileName = file.getName();
-                boolean find = false;
-                for (Blob b : blobs.values()) {
-                    if (fileName.equals(b.getName())) {
-                        find = true;
-                        break;
-                    }
-                }
-                if (!find) {
-                    if (!Utils.restrictedDelete(file)) {
-                        Utils.message("Can not delete file" + file.getName());
-                        throw new GitletException();
-                    }
-                }
+        Map<String, Blob> blobs = c.getBlobs() == null
+            ? new HashMap<String, Blob>() : c.getBlobs();
+        checkForUntracked(cwd());
+        for (String name
+                 : workingFiles(cwd(), WorkTreeWatcher.active(cwd()))) {
+            if (!blobs.containsKey(name) && !deleteWorkingFile(name)) {
+                throw new GitletException("Can not delete file" + name);
             }
         }
         for (Blob blob : blobs.values()) {
-            String blobhash = blob.getHashID();
-            File blobfile = new File(".gitlet/staging/" + blobhash);
-            File file = new File(blob.getName());
-            String contents = Utils.readContentsAsString(blobfile);
-            Utils.writeContents(file, contents);
+            restoreBlob(blob, new File(blob.getName()));
         }
         _stagingArea = new HashMap<String, Blob>();
         _branches.put(_head, uid);
@@ -560,323 +944,272 @@ public class Repo implements Serializable {
     /**
      * The find operation.
      * @param message the commit message you want to find
+     * @return List the uids of the commits with that message
      */
-    public void find(String message) {
-        File commitDir = new File(".gitlet/commits");
-        boolean flag = false;
+    public List<String> find(String message) {
+        File commitDir = ObjectStore.commitDir();
+        List<String> found = new ArrayList<String>();
         for (File commitFile
                 : Objects.requireNonNull(commitDir.listFiles())) {
             String fileName = commitFile.getName();
             Commit temp = uidToCommit(fileName);
             if (temp.getMessage().equals(message)) {
-                System.out.println(fileName);
-                flag = true;
+                found.add(fileName);
             }
         }
-        if (!flag) {
-            Utils.message("Found no commit with that message.");
-            throw new GitletException();
+        if (!found.isEmpty()) {
+            return found;
+        } else {
+            throw new NotFoundException("Found no commit with that message.");
         }
     }
 
     /**
      * The merge operation.
      * @param branchName String name of branch
+     * @return MergeResult what the merge did
      */
-    public void merge(String branchName) {
+    public MergeResult merge(String branchName) {
         if (!_branches.containsKey(branchName)) {
-            Utils.message("A branch with that name does not exist.");
-            throw new GitletException();
+            throw new NotFoundException(
+                "A branch with that name does not exist.");
         }
         if (_stagingArea.size() != 0 || _removedFiles.size() != 0) {
-            Utils.message("You have uncommitted changes.");
-            throw new GitletException();
+            throw new GitletException("You have uncommitted changes.");
         }
         if (branchName.equals(_head)) {
-            Utils.message("Cannot merge a branch with itself.");
-            throw new GitletException();
+            throw new GitletException("Cannot merge a branch with itself.");
         }
-        String splitCommitHash = splitPoint(_head, branchName);
-        if (splitCommitHash.equals(_branches.get(branchName))) {
-            Utils.message("Given branch is an ancestor of the current branch.");
-            throw new GitletException();
+        Reachability bitmaps = Reachability.of(ObjectStore.root(),
+                                               _branches.values(),
+                                               Repo::lookup);
+        String given = _branches.get(branchName);
+        if (bitmaps.isAncestor(given, getHead())) {
+            return new MergeResult(MergeResult.Kind.UP_TO_DATE, getHead(),
+                                   Collections.<String>emptyList());
         }
-        if (splitCommitHash.equals(_branches.get(_head))) {
+        if (bitmaps.isAncestor(getHead(), given)) {
+            String current = _head;
             checkout(branchName);
+            _head = current;
             _branches.put(_head, _branches.get(branchName));
-            Utils.message("Current branch fast-forwarded.");
-            throw new GitletException();
+            return new MergeResult(MergeResult.Kind.FAST_FORWARD, getHead(),
+                                   Collections.<String>emptyList());
         }
-        checkForUntracked(cwd);
-        Commit splitCommit = uidToCommit(splitCommitHash);
+        checkForUntracked(cwd());
+        Commit splitCommit = uidToCommit(splitPoint(_head, branchName));
         Commit currentHead = uidToCommit(getHead());
-        Commit givenHead = uidToCommit(_branches.get(branchName));
-        HashMap<String, Blob> splitBlobs = splitCommit.getBlobs();
-        HashMap<String, Blob> currentBlobs = currentHead.getBlobs();
-        HashMap<String, Blob> givenBlobs = givenHead.getBlobs();
-
-        mergeForSplit(branchName, splitBlobs, currentBlobs, givenBlobs);
-
-        mergeForGiven(branchName, splitBlobs, currentBlobs, givenBlobs);
-
-        String[] parents = new String[]{getHead(), _branches.get(branchName)};
-        commit("Merged " + branchName + " into " + _head + ".", parents);
+        Commit givenHead = uidToCommit(given);
+        TreeMerge result = new TreeMerge(
+            inMergeOrder(splitCommit.getBlobs()), currentHead.getBlobs(),
+            inMergeOrder(givenHead.getBlobs()));
+        String[] parents = new String[]{getHead(), given};
+        apply(result, "Merged " + branchName + " into " + _head + ".",
+              parents);
+        return new MergeResult(MergeResult.Kind.MERGED, getHead(),
+                               result.getConflicts());
     }
 
     /**
-     * Helper function for merge in first step, traverse the
-     * file in split commit, then merge it.
-     * @param branchName String name of branch
-     * @param splitBlobs HashMap all tracked blobs in split Commit
-     * @param currentBlobs HashMap all tracked blobs in current branch head
-     * @param givenBlobs HashMap all tracked blobs in given branch head
-     */
-    private void mergeForSplit(String branchName,
-                               HashMap<String, Blob> splitBlobs,
-                               HashMap<String, Blob> currentBlobs,
-                               HashMap<String, Blob> givenBlobs) {
-        if (splitBlobs != null) {
-            for (Blob blob : splitBlobs.values()) {
-                String blobName = blob.getName();
-                boolean isModifiedInCurrent = isModified(blobName,
-                        splitBlobs, currentBlobs);
-                boolean isModifiedInGiven = isModified(blobName,
-                        splitBlobs, givenBlobs);
-                boolean isModifiedBetween = isModified(blobName,
-                        currentBlobs, givenBlobs);
-                boolean isInCurrent = isBlobInHashMap(blobName, currentBlobs);
-                boolean isInGiven = isBlobInHashMap(blobName, givenBlobs);
-                if (isInCurrent && !isInGiven) {
-                    if (isModifiedInCurrent) {
-                        mergeConflict(branchName, blobName);
-                    } else {
-                        rm(blobName);
-                        Utils.restrictedDelete(blobName);
-                    }
-                }
-                if (isInCurrent && isInGiven) {
-                    if (isModifiedBetween && isModifiedInCurrent
-                            && isModifiedInGiven) {
-                        mergeConflict(branchName, blobName);
-                        break;
-                    }
-                    if (isModifiedInGiven) {
-                        checkoutFile(branchName, givenBlobs, blobName);
-                    }
-                }
-                if (!isInCurrent && isInGiven) {
-                    if (isModifiedInGiven) {
-                        mergeConflict(branchName, blobName);
-                        break;
-                    }
-                }
-
-            }
+     * The cherry-pick operation: commit on the current branch the
+     * changes the commit UID, which may be abbreviated, made to its
+     * first parent, merged as merge does with that parent as the
+     * common ancestor.  Conflicts are committed marked, as by merge.  A
+     * pick that would leave the files of the head as they are is
+     * refused, as commit refuses to commit nothing.
+     * @param uid String the uid of the commit to pick
+     * @return MergeResult what the pick did
+     */
+    public MergeResult cherryPick(String uid) {
+        Commit picked = uidToCommit(shortToLong(uid));
+        if (_stagingArea.size() != 0 || _removedFiles.size() != 0) {
+            throw new GitletException("You have uncommitted changes.");
         }
-    }
-
-    /**
-     * Helper function for merge in second step, traverse the
-     * file in given branch, then merge it.
-     * @param branchName String name of branch
-     * @param splitBlobs HashMap all tracked blobs in split Commit
-     * @param currentBlobs HashMap all tracked blobs in current branch head
-     * @param givenBlobs HashMap all tracked blobs in given branch head
-     */
-    private void mergeForGiven(String branchName,
-                               HashMap<String, Blob> splitBlobs,
-                               HashMap<String, Blob> currentBlobs,
-                               HashMap<String, Blob> givenBlobs) {
-        if (givenBlobs != null) {
-            for (Blob blob : givenBlobs.values()) {
-                String blobName = blob.getName();
-                boolean isInSplit = isBlobInHashMap(blobName, splitBlobs);
-                boolean isInCurrent = isBlobInHashMap(blobName, currentBlobs);
-                boolean isModifiedBetween = isModified(blobName,
-                        currentBlobs, givenBlobs);
-                if (!isInCurrent) {
-                    if (!isInSplit) {
-                        checkoutFile(branchName, givenBlobs, blobName);
-                    }
-                } else {
-                    if (!isInSplit) {
-                        if (isModifiedBetween) {
-                            mergeConflict(branchName, blobName);
-                            break;
-                        }
-                    }
-                }
-
-            }
+        if (picked.getParentID() == null) {
+            throw new GitletException("Cannot cherry-pick the initial "
+                                      + "commit.");
+        }
+        checkForUntracked(cwd());
+        Commit parent = uidToCommit(picked.getParentID());
+        Map<String, Blob> current = uidToCommit(getHead()).getBlobs();
+        TreeMerge result = new TreeMerge(
+            inMergeOrder(parent.getBlobs()), current,
+            inMergeOrder(picked.getBlobs()));
+        if (CommitGraph.changedPaths(result.tree(), current).isEmpty()) {
+            throw new GitletException("No changes added to the commit.");
         }
+        apply(result, picked.getMessage(), new String[]{getHead()});
+        return new MergeResult(MergeResult.Kind.MERGED, getHead(),
+                               result.getConflicts());
     }
 
     /**
-     * Helper function for check whether the exact blob with the
-     * input blobName in the HashMap blobs.
-     * @param blobname String name of blob you wan to check
-     * @param blobs HashMap key is hashID, value is the Blob object
-     * @return true is the blob in the HashMap, otherwise false.
+     * The rebase operation: replay the commits reachable from the head
+     * and not from the branch BRANCHNAME, parents before children, on
+     * top of that branch's head, and move the current branch to the
+     * last of them.  Commits brought in by a merge are replayed too,
+     * so the history becomes a line.  Each commit is replayed as a
+     * TreeMerge of the files it changed, with its parent as the common
+     * ancestor, into the tree of the commit made before it; nothing is
+     * written to the working tree until the end, when the files that
+     * differ between the old head and the new one are written at once.
+     * The one Reachability that finds the commits to replay answers
+     * every ancestry question of the rebase.  Merge commits themselves,
+     * and commits whose changes BRANCHNAME already has, are dropped;
+     * conflicts are committed marked, as by merge.
+     * @param branchName String name of the branch to rebase onto
+     * @return MergeResult what the rebase did
      */
-    private boolean isBlobInHashMap(String blobname,
-                                    HashMap<String, Blob> blobs) {
-        boolean flag = false;
-        if (blobs != null) {
-            for (Blob temp : blobs.values()) {
-                if (temp.getName().equals(blobname)) {
-                    flag = true;
-                    break;
-                }
+    public MergeResult rebase(String branchName) {
+        if (!_branches.containsKey(branchName)) {
+            throw new NotFoundException(
+                "A branch with that name does not exist.");
+        }
+        if (_stagingArea.size() != 0 || _removedFiles.size() != 0) {
+            throw new GitletException("You have uncommitted changes.");
+        }
+        if (branchName.equals(_head)) {
+            throw new GitletException(
+                "Cannot rebase a branch onto itself.");
+        }
+        Reachability bitmaps = Reachability.of(ObjectStore.root(),
+                                               _branches.values(),
+                                               Repo::lookup);
+        String onto = _branches.get(branchName);
+        String head = getHead();
+        if (bitmaps.isAncestor(onto, head)) {
+            return new MergeResult(MergeResult.Kind.UP_TO_DATE, head,
+                                   Collections.<String>emptyList());
+        }
+        checkForUntracked(cwd());
+        Map<String, Blob> before = uidToCommit(head).getBlobs();
+        FileTree tree = FileTree.of(uidToCommit(onto).getBlobs());
+        if (bitmaps.isAncestor(head, onto)) {
+            moveTo(onto, before, tree);
+            return new MergeResult(MergeResult.Kind.FAST_FORWARD, onto,
+                                   Collections.<String>emptyList());
+        }
+        List<Commit> replay = new ArrayList<Commit>();
+        for (String uid : bitmaps.reachableOnly(head, onto)) {
+            Commit c = uidToCommit(uid);
+            if (c.getParentid().length == 1) {
+                replay.add(c);
+            }
+        }
+        String tip = onto;
+        List<String> conflicts = new ArrayList<String>();
+        for (Commit c : replay) {
+            Map<String, Blob> parent = uidToCommit(c.getParentID())
+                .getBlobs();
+            Map<String, Blob> files = c.getBlobs();
+            TreeMerge step = new TreeMerge(
+                parent, tree, files, CommitGraph.changedPaths(files, parent));
+            FileTree next = step.tree();
+            conflicts.addAll(step.getConflicts());
+            if (next.changedNames(tree).isEmpty()) {
+                continue;
+            }
+            Commit commit = new Commit(c.getMessage(), new String[]{tip},
+                                       _head, next);
+            next.store();
+            WriteBatch.write(ObjectStore.commitFile(commit.getUid()),
+                             Utils.serialize(commit));
+            if (!step.getConflicts().isEmpty()) {
+                WriteBatch.sync();
             }
+            tip = commit.getUid();
+            tree = next;
         }
-        return flag;
+        moveTo(tip, before, tree);
+        return new MergeResult(MergeResult.Kind.MERGED, tip, conflicts);
     }
 
     /**
-     * Calling the checkout method for merge the file between two branches.
-     * @param branchName String the name of branch where the file in
-     * @param blobs HashMap the blobs
-     * @param blobName String the name of the blob
+     * Point the current branch at the commit UID, which tracks AFTER,
+     * and bring the working tree, which has the files BEFORE, to it:
+     * only the files that differ are deleted or written.
+     * @param uid String the new head commit
+     * @param before Map the files of the old head, or null
+     * @param after Map the files of UID, or null
      */
-    private void checkoutFile(String branchName,
-                              HashMap<String, Blob> blobs, String blobName) {
-        ArrayList<String> args = new ArrayList<>();
-        args.add(_branches.get(branchName));
-        args.add("--");
-        args.add(blobName);
-        checkout(args);
-        _stagingArea.put(blobName, blobs.get(blobName));
+    private void moveTo(String uid, Map<String, Blob> before,
+                        Map<String, Blob> after) {
+        WriteBatch.sync();
+        List<Blob> writes = new ArrayList<Blob>();
+        for (String name : CommitGraph.changedPaths(after, before)) {
+            Blob blob = after == null ? null : after.get(name);
+            if (blob == null) {
+                deleteWorkingFile(name);
+            } else {
+                writes.add(blob);
+            }
+        }
+        writes.parallelStream().forEach(blob ->
+            restoreBlob(blob, new File(blob.getName())));
+        _branches.put(_head, uid);
     }
 
     /**
-     * This method used to handle the conflict situation when
-     * merge two branches.
-     * @param branchName String the given branch name
-     * @param fileName String the file which is conflict
+     * Commit RESULT with MSG and PARENTS, then bring the working tree
+     * to it in one pass: files are only written once the commit is
+     * made, so a merge that fails leaves the working tree untouched.
+     * @param result TreeMerge the merge
+     * @param msg String the commit message
+     * @param parents Array of the uids of the parents
      */
-    private void mergeConflict(String branchName, String fileName) {
-        Commit splitCommit = uidToCommit(splitPoint(branchName, _head));
-        Commit currentHead = uidToCommit(getHead());
-        Commit givenHead = uidToCommit(_branches.get(branchName));
-        HashMap<String, Blob> splitBlobs = splitCommit.getBlobs();
-        HashMap<String, Blob> currentBlobs = currentHead.getBlobs();
-        HashMap<String, Blob> givenBlobs = givenHead.getBlobs();
-        String cContents = "";
-        for (Blob blob : currentBlobs.values()) {
-            if (blob.getName().equals(fileName)) {
-                cContents = blob.getContentsAsString();
-                break;
-            }
+    private void apply(TreeMerge result, String msg, String[] parents) {
+        _stagingArea.putAll(result.getStaged());
+        _removedFiles.addAll(result.getRemoved());
+        commit(msg, parents);
+        for (String name : result.getDeletes()) {
+            deleteWorkingFile(name);
         }
-        String gContents = "";
-        for (Blob blob : givenBlobs.values()) {
-            if (blob.getName().equals(fileName)) {
-                gContents = blob.getContentsAsString();
-                break;
-            }
-        }
-        String contents = "<<<<<<< HEAD\n";
-        contents += cContents;
-        contents += "=======\n" + gContents;
-        contents += ">>>>>>>\n";
-        Utils.writeContents(new File(fileName), contents);
-        add(fileName);
-        Utils.message("Encountered a merge conflict.");
+        WriteBatch.sync();
+        result.getWrites().values().parallelStream().forEach(blob ->
+            restoreBlob(blob, new File(blob.getName())));
     }
 
     /**
-     * Helper Function for check whether the exact file has been changed
-     * from commit H to commit I.
-     * @param fileName String the name of file you want to check
-     * @param h HashMap<String, Blob> tracked blobs in commit H
-     * @param i HashMap<String, Blob> tracked blobs in commit i
-     * @return a boolean if the file with name F has been modified from
-     * commit H to commit I.
+     * Return FILES, or null if FILES is null, as a HashMap: merge stops
+     * at the first conflict of each step, so which files it visits
+     * depends on their order, and it keeps the order it has always
+     * had, that of a HashMap read back from a commit, whose table has
+     * the size HashMap.readObject gives it.
+     * @param files Map the files of a commit, or null
+     * @return HashMap the same files
      */
-    boolean isModified(String fileName, HashMap<String, Blob> h,
-                       HashMap<String, Blob> i) {
-        String b1 = "", b2 = "";
-        for (Blob blob : h.values()) {
-            if (blob.getName().equals(fileName)) {
-                b1 = blob.getHashID();
-            }
-        }
-        for (Blob blob : i.values()) {
-            if (blob.getName().equals(fileName)) {
-                b2 = blob.getHashID();
-            }
+    private static HashMap<String, Blob> inMergeOrder(
+        Map<String, Blob> files) {
+        if (files == null) {
+            return null;
         }
-        return !b1.equals(b2);
+        HashMap<String, Blob> result = new HashMap<String, Blob>(
+            (int) Math.max(16, files.size() / 0.75f + 1.0f));
+        result.putAll(files);
+        return result;
     }
 
     /**
      * Takes in two branch names, BRANCH1 and BRANCH2. Returns the
-     * SHA ID of the common ancestor commit.
+     * SHA ID of the common ancestor commit nearest to the head of
+     * CURRENTBRANCH, found by Reachability over the commit graph
+     * without reading any commit the graph already holds.
      * @param currentBranch String the name of current branch
      * @param givenBranch String the name of given branch
      * @return String the uid of the found Split Commit
      */
-    private String splitPoint(String currentBranch, String givenBranch) {
-        String head1hash = _branches.get(currentBranch);
-        String head2hash = _branches.get(givenBranch);
-        Commit head1 = uidToCommit(head1hash);
-        Commit head2 = uidToCommit(head2hash);
-
-        cCommits.put(head1, 0);
-        gCommits.put(head2, 0);
-        Commit splitCommit = new Commit();
-
-        dfsForSplitCommit(head1, 0, "branch1");
-        dfsForSplitCommit(head2, 0, "branch2");
-        int dist = 100;
-
-        for (Commit current : cCommits.keySet()) {
-            for (Commit given : gCommits.keySet()) {
-                if (current.getUid().equals(given.getUid())) {
-                    if (cCommits.get(current) < dist) {
-                        splitCommit = current;
-                        dist = cCommits.get(current);
-                    }
-                }
-            }
-        }
-        cCommits.clear();
-        gCommits.clear();
-        return splitCommit.getUid();
+    String splitPoint(String currentBranch, String givenBranch) {
+        String current = _branches.get(currentBranch);
+        String given = _branches.get(givenBranch);
+        Object event = Events.begin(Events.MERGE_BASE);
+        Reachability bitmaps = Reachability.of(ObjectStore.root(),
+                                               Arrays.asList(current, given),
+                                               Repo::lookup);
+        String split = bitmaps.mergeBase(current, given);
+        Events.end(event, split, 0, bitmaps.walked());
+        return split;
     }
 
-    /**
-     * Helper function for find the nearest SplitPoint using the DFS.
-     * @param head Commit the start point of our DFS
-     * @param dist Integer the distance between head to current Commit
-     * @param branch String of current branch
-     */
-    private void dfsForSplitCommit(Commit head, int dist, String branch) {
-        if (head == null) {
-            return;
-        }
-        if (head.getAllParentID() == null) {
-            return;
-        }
-        String[] headParent = head.getAllParentID();
-        if (branch.equals("branch1")) {
-            for (String s : headParent) {
-                Commit temp = uidToCommit(s);
-                dist += 1;
-                cCommits.put(temp, dist);
-                dfsForSplitCommit(temp, dist, "branch1");
-            }
-        } else {
-            for (String s : headParent) {
-                Commit temp = uidToCommit(s);
-                dist += 1;
-                gCommits.put(temp, dist);
-                dfsForSplitCommit(temp, dist, "branch2");
-            }
-        }
-    }
-
-
     /**
      * This function takes in the present working directory
      * PWD and will determine if there are untracked files
@@ -886,36 +1219,69 @@ public class Repo implements Serializable {
      */
     private void checkForUntracked(File dir) {
         Commit lastCommit = uidToCommit(getHead());
-        HashMap<String, Blob> trackedFiles = lastCommit.getBlobs();
+        Map<String, Blob> trackedFiles = lastCommit.getBlobs();
         String s = "There is an untracked file in the way; delete it, "
                 + "or add and commit it first.";
-        for (File f : Objects.requireNonNull(dir.listFiles())) {
-            if (f.getName().equals(".DS_Store")
-                    || f.getName().equals(".gitignore")
-                    || f.getName().equals("proj3.iml")
-                    || f.getName().equals("Makefile")) {
-                continue;
-            }
-            if (f.isDirectory()) {
-                continue;
-            }
+        for (String name
+                 : workingFiles(dir, WorkTreeWatcher.active(dir))) {
             if (trackedFiles == null) {
-                if (Objects.requireNonNull(dir.listFiles()).length > 1) {
-                    Utils.message(s);
-                    throw new GitletException();
-                }
-            } else {
-                boolean notTracked = !trackedFiles.containsKey(f.getName());
-                boolean notStaging = !_stagingArea.containsKey(f.getName());
-                boolean notRoot = !f.getName().equals(".gitlet");
-                if (notRoot && notTracked && notStaging) {
-                    Utils.message(s);
-                    throw new GitletException();
-                }
+                throw new UntrackedFileException(s);
+            }
+            boolean notTracked = !trackedFiles.containsKey(name);
+            boolean notStaging = !_stagingArea.containsKey(name);
+            if (notTracked && notStaging) {
+                throw new UntrackedFileException(s);
             }
         }
     }
 
+    /**
+     * Return the paths from DIR, with "/" between their parts, of the
+     * files of the working tree at DIR, at any depth, that the ignore
+     * rules do not pass over, from WATCHER, if it is not null, rather
+     * than walking the tree.
+     * @param dir File the root of the working tree
+     * @param watcher WorkTreeWatcher the watch over DIR, or null
+     * @return List of the paths
+     */
+    private static List<String> workingFiles(File dir,
+                                             WorkTreeWatcher watcher) {
+        if (watcher != null) {
+            return watcher.files();
+        }
+        List<String> result = new ArrayList<>();
+        Path root = dir.toPath().toAbsolutePath().normalize();
+        IgnoreRules.of(dir).collect(root, root, result);
+        return result;
+    }
+
+    /**
+     * Delete the working file NAME, a path from the root of the working
+     * tree with "/" between its parts, and then each directory above it
+     * that this leaves empty.  Like Utils.restrictedDelete, refuse
+     * unless the current directory is a Gitlet working tree.
+     * @param name String the path of the file
+     * @return boolean true if the file was deleted
+     */
+    private static boolean deleteWorkingFile(String name) {
+        if (name.indexOf('/') < 0) {
+            return Utils.restrictedDelete(name);
+        }
+        if (!new File(".gitlet").isDirectory()) {
+            throw new IllegalArgumentException(
+                "not .gitlet working directory");
+        }
+        File file = new File(name);
+        if (file.isDirectory() || !file.delete()) {
+            return false;
+        }
+        File dir = file.getParentFile();
+        while (dir != null && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+        return true;
+    }
+
     /**
      * This method is used to find the corresponding Commit object
      * according to the unique uid it contains.
@@ -923,33 +1289,61 @@ public class Repo implements Serializable {
      * @return Commit object read from file
      */
     public Commit uidToCommit(String uid) {
-        File f = new File(".gitlet/commits/" + uid);
+        return lookup(uid);
+    }
+
+    /**
+     * Return the commit whose uid is UID, from the commit cache if it
+     * is there.
+     * @param uid String the uid for each Commit object
+     * @return Commit object read from file
+     */
+    static Commit lookup(String uid) {
+        Commit cached;
+        synchronized (COMMIT_CACHE) {
+            cached = COMMIT_CACHE.get(uid);
+        }
+        if (cached != null) {
+            Trace.count(Trace.Counter.CACHE_HITS);
+            return cached;
+        }
+        File f = ObjectStore.commitFile(uid);
         if (f.exists()) {
-            return Utils.readObject(f, Commit.class);
+            Trace.count(Trace.Counter.CACHE_MISSES);
+            Commit c = Utils.readObject(f, Commit.class);
+            synchronized (COMMIT_CACHE) {
+                COMMIT_CACHE.put(uid, c);
+            }
+            return c;
         } else {
-            Utils.message("No commit with that id exists.");
-            throw new GitletException();
+            throw new NotFoundException("No commit with that id exists.");
         }
     }
 
     /**
      * Takes in a shortened String ID and returns a String
-     * of the full length ID.
+     * of the full length ID, that of the commit whose id starts with it.
      * @param id String input of the shorten id
      * @return The full size uid of the found Commit
      */
-    private String shortToLong(String id) {
+    static String shortToLong(String id) {
         if (id.length() == Utils.UID_LENGTH) {
             return id;
         }
-        File commitFolder = new File(".gitlet/commits");
-        File[] commits = commitFolder.listFiles();
-        for (File file : commits) {
-            if (file.getName().contains(id)) {
-                return file.getName();
+        String prefix = id.toLowerCase();
+        String found = null;
+        for (String name
+                 : Objects.requireNonNull(ObjectStore.commitDir().list())) {
+            if (name.startsWith(prefix) && ObjectId.isId(name)) {
+                if (found != null) {
+                    throw new GitletException("Ambiguous commit id.");
+                }
+                found = name;
             }
         }
-        Utils.message("No commit with that id exists.");
-        throw new GitletException();
+        if (found == null) {
+            throw new NotFoundException("No commit with that id exists.");
+        }
+        return found;
     }
 }
@@ -0,0 +1,403 @@
+package gitlet;
+
+import java.io.File;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+/** Builds synthetic repositories for load and scaling tests.  Commits
+ *  and blobs are written straight to the ObjectStore, so no working
+ *  tree is rewritten and hashed per commit, and histories of a million
+ *  commits can be made in reasonable time.  Everything, the commit ids
+ *  included, is a function of the options alone, so the same options
+ *  and seed always give the same repository.
+ *
+ *  Usage, in an empty directory:
+ *  java gitlet.RepoGenerator [--commits N] [--files N] [--branches N]
+ *      [--topology linear|branches|criss-cross] [--mean-size BYTES]
+ *      [--max-size BYTES] [--churn FRACTION] [--seed N] [--no-checkout]
+ *
+ *  Every commit's tree shares the nodes its changes leave alone with
+ *  its parent's, as every gitlet commit's does, so the space per commit
+ *  grows with the files it changes rather than with --files.
+ *  @author Ruize Xu
+ */
+public class RepoGenerator {
+
+    /** Number of commits to make after the initial one. */
+    private int _commits = 1000;
+
+    /** Number of files tracked by the first commit. */
+    private int _files = 100;
+
+    /** Number of branches besides master, for the branches topology. */
+    private int _branchCount = 4;
+
+    /** Shape of the history: "linear", "branches" or "criss-cross". */
+    private String _topology = "linear";
+
+    /** Mean size of a file, in bytes. */
+    private int _meanSize = 4096;
+
+    /** Largest size of a file, in bytes. */
+    private int _maxSize = 1 << 20;
+
+    /** Fraction of the files that each commit changes. */
+    private double _churn = 0.01;
+
+    /** Seed of all random choices. */
+    private long _seed = 1;
+
+    /** True if the head commit is checked out when the history is
+     *  built. */
+    private boolean _checkout = true;
+
+    /** Chance, in each commit of the branches topology, of merging a
+     *  branch into master instead. */
+    private static final double MERGE_CHANCE = 0.05;
+
+    /** Number of commits whose objects are written in one
+     *  WriteBatch. */
+    private static final int SYNC_INTERVAL = 1000;
+
+    /** Spread of the logarithm of the file sizes. */
+    private static final double SIZE_SIGMA = 1.0;
+
+    /** Mask of the random bits of each byte of contents; the lines
+     *  hold printable characters and average 64 bytes. */
+    private static final int LINE_MASK = 63;
+
+    /** Time of the first generated commit. */
+    private static final ZonedDateTime EPOCH =
+        ZonedDateTime.of(2020, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    /** Source of all random choices. */
+    private Random _random;
+
+    /** Number of commits made so far, which also sets their times. */
+    private int _made;
+
+    /** Number of file names used so far. */
+    private int _named;
+
+    /** The head commit of each branch. */
+    private HashMap<String, String> _tips;
+
+    /** The files tracked by the head commit of each branch. */
+    private HashMap<String, FileTree> _trees;
+
+    /** The commit graph each commit is added to as it is written, or
+     *  null. */
+    private CommitGraph _graph;
+
+    /**
+     * Build a repository in the current directory as ARGS describe.
+     * @param args String array of options
+     */
+    public static void main(String... args) {
+        RepoGenerator gen = new RepoGenerator();
+        try {
+            gen.parse(args);
+        } catch (IllegalArgumentException excp) {
+            System.out.println(excp.getMessage());
+            System.exit(1);
+        }
+        if (new File(".gitlet").exists()) {
+            System.out.println("A Gitlet version-control system already "
+                               + "exists in the current directory.");
+            System.exit(1);
+        }
+        Repo repo = new Repo();
+        WriteBatch.sync();
+        gen._graph = CommitGraph.read(ObjectStore.root());
+        gen._graph.update(Collections.singleton(repo.getHead()),
+                          Repo::lookup);
+        HashMap<String, String> tips = gen.generate(repo.getHead());
+        gen._graph.write();
+        for (String branch : tips.keySet()) {
+            repo.setBranch(branch, tips.get(branch));
+        }
+        if (gen._checkout) {
+            repo.reset(tips.get("master"));
+        }
+        repo.save();
+        System.out.printf("Generated %d commits on %d branches, master "
+                          + "tracking %d files.%n", gen._made, tips.size(),
+                          gen._trees.get("master").size());
+    }
+
+    /**
+     * Set the options from ARGS.
+     * @param args String array of options
+     */
+    void parse(String... args) {
+        for (int i = 0; i < args.length; i += 1) {
+            String opt = args[i];
+            if (opt.equals("--no-checkout")) {
+                _checkout = false;
+                continue;
+            }
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value for "
+                                                   + opt);
+            }
+            String val = args[++i];
+            try {
+                switch (opt) {
+                case "--commits":
+                    _commits = Integer.parseInt(val);
+                    break;
+                case "--files":
+                    _files = Integer.parseInt(val);
+                    break;
+                case "--branches":
+                    _branchCount = Integer.parseInt(val);
+                    break;
+                case "--topology":
+                    _topology = val;
+                    break;
+                case "--mean-size":
+                    _meanSize = Integer.parseInt(val);
+                    break;
+                case "--max-size":
+                    _maxSize = Integer.parseInt(val);
+                    break;
+                case "--churn":
+                    _churn = Double.parseDouble(val);
+                    break;
+                case "--seed":
+                    _seed = Long.parseLong(val);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option "
+                                                       + opt);
+                }
+            } catch (NumberFormatException excp) {
+                throw new IllegalArgumentException("Bad value for " + opt);
+            }
+        }
+        if (!_topology.equals("linear") && !_topology.equals("branches")
+            && !_topology.equals("criss-cross")) {
+            throw new IllegalArgumentException("Unknown topology "
+                                               + _topology);
+        }
+    }
+
+    /**
+     * Write the history below the commit INITIAL to the object store,
+     * durably, and return the head commit of each branch it made.
+     * @param initial String the uid of the initial commit
+     * @return HashMap from branch name to commit uid
+     */
+    HashMap<String, String> generate(String initial) {
+        _random = new Random(_seed);
+        _made = 0;
+        _named = 0;
+        _tips = new HashMap<String, String>();
+        _trees = new HashMap<String, FileTree>();
+        _tips.put("master", initial);
+        _trees.put("master", FileTree.EMPTY);
+        HashMap<String, Blob> first = new HashMap<String, Blob>();
+        for (int i = 0; i < _files; i += 1) {
+            String name = newName();
+            first.put(name, newBlob(name));
+        }
+        commit("master", FileTree.of(first), "initial files");
+        switch (_topology) {
+        case "branches":
+            branches();
+            break;
+        case "criss-cross":
+            crissCross();
+            break;
+        default:
+            while (_made < _commits) {
+                change("master");
+            }
+            break;
+        }
+        WriteBatch.sync();
+        return _tips;
+    }
+
+    /** Fork _branchCount branches off master as the history grows, and
+     *  make each commit on a random branch, sometimes a merge of one of
+     *  them into master. */
+    private void branches() {
+        List<String> names = new ArrayList<String>();
+        names.add("master");
+        while (_made < _commits) {
+            if (names.size() <= _branchCount
+                && _random.nextInt(_commits) < _branchCount * 2) {
+                String name = "b" + names.size();
+                _tips.put(name, _tips.get("master"));
+                _trees.put(name, _trees.get("master"));
+                names.add(name);
+            }
+            String branch = names.get(_random.nextInt(names.size()));
+            if (names.size() > 1 && _random.nextDouble() < MERGE_CHANCE) {
+                String other = names.get(1 + _random.nextInt(names.size()
+                                                              - 1));
+                merge("master", other);
+            } else {
+                change(branch);
+            }
+        }
+    }
+
+    /** Make two branches, "a" and "b", then repeatedly commit on each
+     *  and merge into each the other's previous head, so that every
+     *  later pair of heads has two split points.  Master ends at a. */
+    private void crissCross() {
+        _tips.put("a", _tips.get("master"));
+        _trees.put("a", _trees.get("master"));
+        _tips.put("b", _tips.get("master"));
+        _trees.put("b", _trees.get("master"));
+        while (_made < _commits) {
+            change("a");
+            change("b");
+            String a = _tips.get("a");
+            FileTree aTree = _trees.get("a");
+            merge("a", _tips.get("b"), _trees.get("b"), "b");
+            merge("b", a, aTree, "a");
+        }
+        _tips.put("master", _tips.get("a"));
+        _trees.put("master", _trees.get("a"));
+    }
+
+    /**
+     * Commit on BRANCH a change to about _churn of its files: mostly new
+     * contents, sometimes a new or a removed file.  No file is changed
+     * twice in one commit, as the blob of the first change would then be
+     * written but tracked by no commit.
+     * @param branch String the branch to commit on
+     */
+    private void change(String branch) {
+        FileTree tree = _trees.get(branch);
+        int changes = Math.max(1, (int) Math.round(_churn * _files));
+        List<String> untouched = new ArrayList<String>(tree.keySet());
+        untouched.sort(null);
+        int count = untouched.size();
+        for (int i = 0; i < changes; i += 1) {
+            int roll = _random.nextInt(20);
+            if (untouched.isEmpty() || roll == 0) {
+                tree = tree.with(newBlob(newName()));
+                count += 1;
+                continue;
+            }
+            int pick = _random.nextInt(untouched.size());
+            String name = untouched.get(pick);
+            untouched.set(pick, untouched.get(untouched.size() - 1));
+            untouched.remove(untouched.size() - 1);
+            if (roll == 1 && count > 1) {
+                tree = tree.without(name);
+                count -= 1;
+            } else {
+                tree = tree.with(newBlob(name));
+            }
+        }
+        commit(branch, tree, "change " + _made);
+    }
+
+    /**
+     * Merge the head of OTHER into BRANCH.
+     * @param branch String the branch to commit on
+     * @param other String the branch merged
+     */
+    private void merge(String branch, String other) {
+        merge(branch, _tips.get(other), _trees.get(other), other);
+    }
+
+    /**
+     * Commit on BRANCH a merge of the commit UID, which tracks TREE and
+     * is called NAME in the message.  The merge keeps every file of
+     * either side, taking BRANCH's version where both have one.
+     * @param branch String the branch to commit on
+     * @param uid String the commit merged
+     * @param tree FileTree the files tracked by UID
+     * @param name String the branch merged
+     */
+    private void merge(String branch, String uid, FileTree tree,
+                       String name) {
+        if (uid.equals(_tips.get(branch))) {
+            change(branch);
+            return;
+        }
+        FileTree merged = _trees.get(branch);
+        for (Blob blob : tree.values()) {
+            if (!merged.containsKey(blob.getName())) {
+                merged = merged.with(blob);
+            }
+        }
+        String[] parents = {_tips.get(branch), uid};
+        write(branch, parents, merged,
+              "Merged " + name + " into " + branch + ".");
+    }
+
+    /**
+     * Commit TREE on BRANCH with the single parent its head.
+     * @param branch String the branch to commit on
+     * @param tree FileTree the files tracked
+     * @param message String the commit message
+     */
+    private void commit(String branch, FileTree tree,
+                        String message) {
+        write(branch, new String[] {_tips.get(branch)}, tree, message);
+    }
+
+    /**
+     * Write a commit of TREE on BRANCH with PARENTS and MESSAGE, one
+     * minute after the last, and make it the head of BRANCH.
+     * @param branch String the branch to commit on
+     * @param parents String array of parent uids
+     * @param tree FileTree the files tracked
+     * @param message String the commit message
+     */
+    private void write(String branch, String[] parents, FileTree tree,
+                       String message) {
+        String time = Commit.format(EPOCH.plusMinutes(_made));
+        Commit commit = new Commit(message, parents, branch, tree, time);
+        tree.store();
+        WriteBatch.write(ObjectStore.commitFile(commit.getUid()),
+                         Utils.serialize(commit));
+        if (_graph != null) {
+            _graph.add(commit.getUid(), parents, tree, _trees.get(branch));
+        }
+        _tips.put(branch, commit.getUid());
+        _trees.put(branch, tree);
+        _made += 1;
+        if (_made % SYNC_INTERVAL == 0) {
+            WriteBatch.sync();
+        }
+    }
+
+    /** Return a file name not used before. */
+    private String newName() {
+        _named += 1;
+        return String.format("f%07d.txt", _named);
+    }
+
+    /**
+     * Return a stored blob for file NAME, with random text contents of a
+     * size drawn from a log-normal distribution of mean _meanSize, cut
+     * off at _maxSize.
+     * @param name String the name of the file
+     * @return Blob the stored blob
+     */
+    private Blob newBlob(String name) {
+        double mu = Math.log(Math.max(1, _meanSize))
+            - SIZE_SIGMA * SIZE_SIGMA / 2;
+        double size = Math.exp(mu + SIZE_SIGMA * _random.nextGaussian());
+        byte[] contents = new byte[(int) Math.min(size, _maxSize)];
+        _random.nextBytes(contents);
+        for (int i = 0; i < contents.length; i += 1) {
+            int c = contents[i] & LINE_MASK;
+            contents[i] = (byte) (c == 0 ? '\n' : ' ' + c);
+        }
+        return new Blob(name, contents);
+    }
+}
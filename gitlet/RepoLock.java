@@ -0,0 +1,113 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+
+/** The writer lock of a repository.  Every command that changes a
+ *  repository holds the lock on the file "lock" in its shared .gitlet
+ *  directory from before it reads the repository until after it has
+ *  written it back, so two writers cannot both change the same state
+ *  and lose one another's changes.  Readers take no lock: the files
+ *  they read are only ever replaced whole, by rename, so they always
+ *  see either the old or the new version.  The lock is an operating
+ *  system file lock, so it is released if its holder dies.
+ *  @author Ruize Xu
+ */
+class RepoLock implements AutoCloseable {
+
+    /** Milliseconds to wait for another writer to finish. */
+    static final long TIMEOUT = 10_000;
+
+    /** Milliseconds between attempts to take the lock. */
+    private static final long RETRY = 20;
+
+    /** The open lock file. */
+    private final FileChannel _channel;
+
+    /** The lock held on it. */
+    private final FileLock _lock;
+
+    /** A lock LOCK held on the open file CHANNEL. */
+    private RepoLock(FileChannel channel, FileLock lock) {
+        _channel = channel;
+        _lock = lock;
+    }
+
+    /**
+     * Take the writer lock of the repository whose shared .gitlet
+     * directory is DIR, waiting up to TIMEOUT for it.
+     * @param dir File the shared .gitlet directory
+     * @return RepoLock the lock, which the caller closes
+     */
+    static RepoLock acquire(File dir) {
+        return acquire(dir, TIMEOUT);
+    }
+
+    /**
+     * Take the writer lock of the repository whose shared .gitlet
+     * directory is DIR, waiting up to TIMEOUT milliseconds for it.
+     * @param dir File the shared .gitlet directory
+     * @param timeout long milliseconds to wait
+     * @return RepoLock the lock, which the caller closes
+     */
+    static RepoLock acquire(File dir, long timeout) {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(new File(dir, "lock").toPath(),
+                                       StandardOpenOption.CREATE,
+                                       StandardOpenOption.WRITE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        long deadline = System.currentTimeMillis() + timeout;
+        try {
+            while (true) {
+                FileLock lock;
+                try {
+                    lock = channel.tryLock();
+                } catch (OverlappingFileLockException excp) {
+                    lock = null;
+                }
+                if (lock != null) {
+                    return new RepoLock(channel, lock);
+                }
+                if (System.currentTimeMillis() >= deadline) {
+                    break;
+                }
+                Thread.sleep(RETRY);
+            }
+        } catch (IOException excp) {
+            close(channel);
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+        close(channel);
+        throw new GitletException("Another gitlet command is changing this "
+                                  + "repository; try again when it is done.");
+    }
+
+    /** Release the lock. */
+    @Override
+    public void close() {
+        try {
+            _lock.release();
+        } catch (IOException excp) {
+            /* Closing the channel releases it in any case. */
+        }
+        close(_channel);
+    }
+
+    /** Close CHANNEL, ignoring errors. */
+    private static void close(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException excp) {
+            /* Nothing more to do. */
+        }
+    }
+}
@@ -0,0 +1,458 @@
+package gitlet;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/** The library interface to a Gitlet repository, for programs that use
+ *  Gitlet without going through its command line; Main is one such
+ *  program.  Errors are thrown as GitletExceptions carrying the message
+ *  the command line prints, with NotFoundException and
+ *  UntrackedFileException for those a caller may want to handle.
+ *  Nothing here prints.
+ *
+ *  A Repository may be shared by threads.  Queries read the repository
+ *  afresh, without a lock, as reader commands do; each change reads,
+ *  changes and writes it back holding both a lock private to the
+ *  process and the RepoLock, so changes from threads and from other
+ *  processes apply one at a time.  Commits read are kept in a cache
+ *  shared by every Repository of the process.
+ *
+ *  Gitlet works on the current directory and keeps the location of the
+ *  object store in a static field, so a Repository is always the one
+ *  whose working tree is the process's current directory, and a process
+ *  can use only one repository at a time.
+ *  @author Ruize Xu
+ */
+public final class Repository {
+
+    /** Held by the thread changing the repository, so threads of this
+     *  process take turns rather than all contending for RepoLock,
+     *  which a process can hold only once. */
+    private static final ReentrantLock WRITER = new ReentrantLock();
+
+    /** The repository in the current directory, which exists. */
+    private Repository() {
+    }
+
+    /**
+     * Return the repository in the current directory.
+     * @return Repository the repository
+     */
+    public static Repository open() {
+        if (!new File(".gitlet").isDirectory()) {
+            throw new NotFoundException(
+                "Not in an initialized Gitlet directory.");
+        }
+        Repo.findRoot();
+        return new Repository();
+    }
+
+    /**
+     * Create a repository in the current directory, with one commit,
+     * and return it.  The .gitlet directory is made first, so that only
+     * one of two racing inits goes on, and the commit is saved under
+     * the RepoLock; if anything fails, its objects are discarded.
+     * @return Repository the new repository
+     */
+    public static Repository init() {
+        WRITER.lock();
+        try {
+            Repo repo = new Repo();
+            try (RepoLock lock = RepoLock.acquire(Repo.findRoot())) {
+                repo.save();
+            }
+        } catch (RuntimeException | Error excp) {
+            WriteBatch.discard();
+            throw excp;
+        } finally {
+            WRITER.unlock();
+        }
+        return new Repository();
+    }
+
+    /**
+     * Create a repository in the current directory with the history of
+     * the one at PATH, check out its head and return it.
+     * @param path String the source working directory or its .gitlet
+     *             directory, using forward slashes as separators
+     * @return Repository the new repository
+     */
+    public static Repository cloneFrom(String path) {
+        WRITER.lock();
+        try {
+            if (new File(".gitlet").exists()) {
+                throw new GitletException("A Gitlet version-control "
+                        + "system already exists in the "
+                        + "current directory");
+            }
+            Repo.cloneFrom(path).save();
+        } catch (RuntimeException | Error excp) {
+            WriteBatch.discard();
+            throw excp;
+        } finally {
+            WRITER.unlock();
+        }
+        return new Repository();
+    }
+
+    /**
+     * Return the uid of the head commit of the current branch.
+     * @return String uid
+     */
+    public String head() {
+        return read().getHead();
+    }
+
+    /**
+     * Return the name of the current branch.
+     * @return String branch name
+     */
+    public String currentBranch() {
+        return read().getCurrentBranch();
+    }
+
+    /**
+     * Return the branches, from name to head commit uid.
+     * @return Map from branch name to uid
+     */
+    public Map<String, String> branches() {
+        return read().getBranches();
+    }
+
+    /**
+     * Return the commit whose uid is, or starts with, ID.
+     * @param id String the uid or a prefix of it
+     * @return Commit the commit
+     */
+    public Commit getCommit(String id) {
+        return Repo.lookup(Repo.shortToLong(id));
+    }
+
+    /**
+     * Return the history of the current branch, newest first, following
+     * first parents, as the log command shows it.
+     * @return RevWalk the commits
+     */
+    public RevWalk log() {
+        return RevWalk.firstParent(head());
+    }
+
+    /**
+     * Return the history from the commit START, newest first, following
+     * first parents.
+     * @param start String the uid of the first commit, or a prefix of it
+     * @return RevWalk the commits
+     */
+    public RevWalk log(String start) {
+        return RevWalk.firstParent(Repo.shortToLong(start));
+    }
+
+    /**
+     * Return the history of the current branch, newest first, following
+     * first parents, limited to the commits that changed the file PATH.
+     * Most commits are skipped by the changed-path filters of the commit
+     * graph without being read.
+     * @param path String the file name
+     * @return RevWalk the commits
+     */
+    public RevWalk history(String path) {
+        return RevWalk.touching(head(), path);
+    }
+
+    /**
+     * Return every commit ever made, in no particular order, as the
+     * global-log command shows them.
+     * @return RevWalk the commits
+     */
+    public RevWalk allCommits() {
+        return RevWalk.all();
+    }
+
+    /**
+     * Return the files tracked by the commit ID.
+     * @param id String the uid or a prefix of it
+     * @return TreeWalk the files
+     */
+    public TreeWalk tree(String id) {
+        return new TreeWalk(getCommit(id));
+    }
+
+    /**
+     * Return the uids of the commits whose message is MESSAGE.
+     * @param message String the commit message
+     * @return List of uids
+     */
+    public List<String> find(String message) {
+        return read().find(message);
+    }
+
+    /**
+     * Return the branches and the staged files.
+     * @return Status the status
+     */
+    public Status status() {
+        return read().status();
+    }
+
+    /**
+     * Check every stored object, reading and hashing them in parallel,
+     * and return those missing, corrupt or dangling.
+     * @return FsckReport the report
+     */
+    public FsckReport fsck() {
+        return read().fsck();
+    }
+
+    /**
+     * Stage the file FILE for the next commit.
+     * @param file String the file name
+     */
+    public void add(String file) {
+        update(repo -> repo.add(file));
+    }
+
+    /**
+     * Stage for the next commit the files PATHS name: each is a file or
+     * a directory whose files, at any depth, are meant.  The files are
+     * hashed in parallel and the staging area written once.
+     * @param paths List of file and directory names
+     */
+    public void add(List<String> paths) {
+        update(repo -> repo.add(paths));
+    }
+
+    /**
+     * Commit the staged files with MESSAGE and return the new commit's
+     * uid.
+     * @param message String the commit message
+     * @return String uid
+     */
+    public String commit(String message) {
+        return write(repo -> {
+            repo.commit(message);
+            return repo.getHead();
+        });
+    }
+
+    /**
+     * Unstage FILE, or stage its removal if it is tracked.
+     * @param file String the file name
+     */
+    public void rm(String file) {
+        update(repo -> repo.rm(file));
+    }
+
+    /**
+     * Create the branch NAME at the head commit.
+     * @param name String the branch name
+     */
+    public void branch(String name) {
+        update(repo -> repo.branch(name));
+    }
+
+    /**
+     * Delete the branch NAME, which is not the current one.
+     * @param name String the branch name
+     */
+    public void removeBranch(String name) {
+        update(repo -> repo.rmbranch(name));
+    }
+
+    /**
+     * Check out the branch NAME and make it current.
+     * @param name String the branch name
+     */
+    public void checkout(String name) {
+        update(repo -> repo.checkout(name));
+    }
+
+    /**
+     * Check out FILE as the commit ID has it.
+     * @param id String the uid or a prefix of it, or null for the head
+     * @param file String the file name
+     */
+    public void checkoutFile(String id, String file) {
+        update(repo -> repo.checkoutFile(id, file));
+    }
+
+    /**
+     * Check out the commit ID and move the current branch to it.
+     * @param id String the uid or a prefix of it
+     */
+    public void reset(String id) {
+        update(repo -> repo.reset(id));
+    }
+
+    /**
+     * Merge the branch NAME into the current one.
+     * @param name String the branch name
+     * @return MergeResult what the merge did
+     */
+    public MergeResult merge(String name) {
+        return write(repo -> repo.merge(name));
+    }
+
+    /**
+     * Replay the commits of the current branch since it left the branch
+     * NAME on top of NAME's head, writing the working tree once.
+     * @param name String the branch to rebase onto
+     * @return MergeResult what the rebase did
+     */
+    public MergeResult rebase(String name) {
+        return write(repo -> repo.rebase(name));
+    }
+
+    /**
+     * Commit on the current branch the changes the commit ID, which may
+     * be abbreviated, made to its first parent.
+     * @param id String the uid of the commit to pick, or a prefix of it
+     * @return MergeResult what the pick did
+     */
+    public MergeResult cherryPick(String id) {
+        return write(repo -> repo.cherryPick(id));
+    }
+
+    /**
+     * Rewrite the blob ids of a repository made by an older Gitlet and
+     * return a report of what changed.
+     * @return String the report
+     */
+    public String migrate() {
+        return write(Repo::migrate);
+    }
+
+    /**
+     * Record the repository at DIR as the remote NAME.
+     * @param name String the remote name
+     * @param dir String the remote's .gitlet directory
+     */
+    public void addRemote(String name, String dir) {
+        update(repo -> repo.addRemote(name, dir));
+    }
+
+    /**
+     * Forget the remote NAME.
+     * @param name String the remote name
+     */
+    public void removeRemote(String name) {
+        update(repo -> repo.rmRemote(name));
+    }
+
+    /**
+     * Copy the branch BRANCH of REMOTE to the branch REMOTE/BRANCH.
+     * @param remote String the remote name
+     * @param branch String the branch name
+     */
+    public void fetch(String remote, String branch) {
+        update(repo -> repo.fetch(remote, branch));
+    }
+
+    /**
+     * Move the branch BRANCH of REMOTE forward to the head commit.
+     * @param remote String the remote name
+     * @param branch String the branch name
+     */
+    public void push(String remote, String branch) {
+        update(repo -> repo.push(remote, branch));
+    }
+
+    /**
+     * Fetch the branch BRANCH of REMOTE and merge it into the current
+     * branch.
+     * @param remote String the remote name
+     * @param branch String the branch name
+     */
+    public void pull(String remote, String branch) {
+        update(repo -> repo.pull(remote, branch));
+    }
+
+    /**
+     * Make a working tree at DIR, sharing this repository's history,
+     * with BRANCH checked out.
+     * @param dir String the new working tree
+     * @param branch String the branch to check out
+     */
+    public void addWorktree(String dir, String branch) {
+        update(repo -> repo.worktreeAdd(dir, branch));
+    }
+
+    /**
+     * Watch the working tree from now on, so that add and the
+     * untracked-file checks of this process learn what changed from
+     * the file system's events instead of scanning and hashing the
+     * whole tree.  A file made or deleted is seen once its event
+     * has arrived.
+     */
+    public void watch() {
+        WorkTreeWatcher.start(Repo.cwd());
+    }
+
+    /** Stop watching the working tree; later commands scan it again. */
+    public void unwatch() {
+        WorkTreeWatcher.stop();
+    }
+
+    /**
+     * Return the repository as last written.
+     * @return Repo the repository
+     */
+    private static Repo read() {
+        try (Trace.Phase load = Trace.phase("load")) {
+            Repo repo = Repo.load();
+            if (repo == null) {
+                throw new NotFoundException(
+                    "Not in an initialized Gitlet directory.");
+            }
+            return repo;
+        }
+    }
+
+    /**
+     * Apply OP to the repository and write it back, unless OP throws.
+     * @param op Consumer the change
+     */
+    private void update(Consumer<Repo> op) {
+        write(repo -> {
+            op.accept(repo);
+            return null;
+        });
+    }
+
+    /**
+     * Apply OP to the repository, write it back, unless OP throws, and
+     * return what OP returned.  Temporary files an earlier process left
+     * in the object store are swept first; if OP or the save throws, the
+     * objects OP wrote but did not sync are discarded, so that the next
+     * change does not make them durable as its own.
+     * @param op Function the change
+     * @param <T> the type of the result
+     * @return T the result of OP
+     */
+    private <T> T write(Function<Repo, T> op) {
+        WRITER.lock();
+        try {
+            File root = Repo.findRoot();
+            try (RepoLock lock = RepoLock.acquire(root)) {
+                WriteBatch.sweep(root);
+                Repo repo = read();
+                T result;
+                try (Trace.Phase run = Trace.phase("run")) {
+                    result = op.apply(repo);
+                }
+                try (Trace.Phase save = Trace.phase("save")) {
+                    repo.save();
+                }
+                return result;
+            }
+        } catch (RuntimeException | Error excp) {
+            WriteBatch.discard();
+            throw excp;
+        } finally {
+            WRITER.unlock();
+        }
+    }
+}
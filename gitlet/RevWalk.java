@@ -0,0 +1,170 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/** A walk over commits, read lazily as it goes: either back from one
+ *  commit along first parents, as log shows them, or over every commit
+ *  in the repository, in no particular order, as global-log does.  A
+ *  first-parent walk may be limited to the commits that changed one
+ *  path; it follows the CommitGraph and reads only the commits whose
+ *  changed-path filter matches, so most are never opened.  Each
+ *  iterator starts the walk afresh.  Commits come from the commit cache
+ *  shared by the process, so walks in different threads do not read
+ *  the same commit twice.
+ *  @author Ruize Xu
+ */
+public final class RevWalk implements Iterable<Commit> {
+
+    /** Uid of the first commit of a first-parent walk, or null for a
+     *  walk over all commits. */
+    private final String _start;
+
+    /** The path a first-parent walk is limited to, or null. */
+    private final String _path;
+
+    /**
+     * A walk from the commit START, or over all commits if START is
+     * null, limited to the commits changing PATH unless it is null.
+     * @param start String the uid of the first commit, or null
+     * @param path String the path, or null
+     */
+    private RevWalk(String start, String path) {
+        _start = start;
+        _path = path;
+    }
+
+    /**
+     * Return the walk from the commit START back along first parents.
+     * @param start String the uid of the first commit
+     * @return RevWalk the walk
+     */
+    static RevWalk firstParent(String start) {
+        return new RevWalk(start, null);
+    }
+
+    /**
+     * Return the walk from the commit START back along first parents,
+     * limited to the commits that changed the file PATH from their first
+     * parent.
+     * @param start String the uid of the first commit
+     * @param path String the file name
+     * @return RevWalk the walk
+     */
+    static RevWalk touching(String start, String path) {
+        return new RevWalk(start, path);
+    }
+
+    /**
+     * Return the walk over every commit in the object store.
+     * @return RevWalk the walk
+     */
+    static RevWalk all() {
+        return new RevWalk(null, null);
+    }
+
+    @Override
+    public Iterator<Commit> iterator() {
+        if (_start == null) {
+            File[] files =
+                Objects.requireNonNull(ObjectStore.commitDir().listFiles());
+            Iterator<File> each = Arrays.asList(files).iterator();
+            return new Iterator<Commit>() {
+                @Override
+                public boolean hasNext() {
+                    return each.hasNext();
+                }
+
+                @Override
+                public Commit next() {
+                    return Repo.lookup(each.next().getName());
+                }
+            };
+        }
+        if (_path != null) {
+            return touchingIterator();
+        }
+        return new Iterator<Commit>() {
+            /** Uid of the next commit, or null at the end. */
+            private String _next = _start;
+
+            @Override
+            public boolean hasNext() {
+                return _next != null;
+            }
+
+            @Override
+            public Commit next() {
+                if (_next == null) {
+                    throw new NoSuchElementException();
+                }
+                Commit c = Repo.lookup(_next);
+                _next = c.getParentID();
+                return c;
+            }
+        };
+    }
+
+    /** Return an iterator over the commits from _start, along first
+     *  parents, that changed _path. */
+    private Iterator<Commit> touchingIterator() {
+        CommitGraph graph = CommitGraph.read(ObjectStore.root());
+        if (graph.position(_start) == CommitGraph.NONE) {
+            graph.update(Collections.singleton(_start), Repo::lookup);
+        }
+        return new Iterator<Commit>() {
+            /** Position of the next commit to look at, or NONE. */
+            private int _pos = graph.position(_start);
+
+            /** The next commit to return, or null if not found yet. */
+            private Commit _next;
+
+            /** The key of _path in the changed-path filters. */
+            private final long _key = CommitGraph.key(_path);
+
+            @Override
+            public boolean hasNext() {
+                while (_next == null && _pos != CommitGraph.NONE) {
+                    int p = _pos;
+                    _pos = graph.parent(p);
+                    if (graph.mayChange(p, _key) && changed(graph, p)) {
+                        _next = Repo.lookup(graph.id(p));
+                    }
+                }
+                return _next != null;
+            }
+
+            @Override
+            public Commit next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Commit c = _next;
+                _next = null;
+                return c;
+            }
+        };
+    }
+
+    /** Return true if the commit at position P of GRAPH has a different
+     *  version of _path from its first parent. */
+    private boolean changed(CommitGraph graph, int p) {
+        Blob now = blob(Repo.lookup(graph.id(p)));
+        int parent = graph.parent(p);
+        Blob before = parent == CommitGraph.NONE ? null
+            : blob(Repo.lookup(graph.id(parent)));
+        if (now == null || before == null) {
+            return now != before;
+        }
+        return !now.getHashID().equals(before.getHashID());
+    }
+
+    /** Return the blob of _path in commit C, or null. */
+    private Blob blob(Commit c) {
+        return c.getBlobs() == null ? null : c.getBlobs().get(_path);
+    }
+}
@@ -0,0 +1,176 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+/** Hashes the files named by the operands of add.  The calling thread
+ *  walks the operands, expanding directories, and feeds file names to a
+ *  bounded queue; one worker per processor takes names from it and
+ *  hashes each file into a Blob.  Nothing is stored or staged here: the
+ *  caller, the single writer, decides which blobs are new, stores them
+ *  and updates the staging area once for all of them.
+ *  @author Ruize Xu
+ */
+class Stager {
+
+    /** Most file names waiting to be hashed; the walker waits when the
+     *  workers fall this far behind. */
+    static final int QUEUE_SIZE = 1024;
+
+    /** Tells a worker there are no more names. */
+    private static final String DONE = "";
+
+    /** Return a Blob for every file named by PATHS, each a file or a
+     *  directory whose files, at any depth, are meant, except those
+     *  IGNORE passes over; a directory it passes over is not entered,
+     *  nor one with a .gitlet of its own, another worktree.
+     *  A file named itself is always meant.  Files whose names SKIP
+     *  accepts, known to need no staging, are not hashed.  File names
+     *  are relative to the working directory with "/" between the
+     *  parts, and each file appears once. */
+    static List<Blob> hash(List<String> paths, IgnoreRules ignore,
+                           Predicate<String> skip) {
+        if (paths.size() == 1 && !new File(paths.get(0)).isDirectory()) {
+            String name = name(Paths.get(paths.get(0)).normalize());
+            return skip.test(name) ? Collections.emptyList()
+                : Collections.singletonList(new Blob(name));
+        }
+        int workers = Runtime.getRuntime().availableProcessors();
+        BlockingQueue<String> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        List<Future<List<Blob>>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < workers; i += 1) {
+                results.add(pool.submit(() -> work(queue, failure)));
+            }
+            try {
+                walk(paths, ignore, skip, queue);
+            } finally {
+                for (int i = 0; i < workers; i += 1) {
+                    queue.put(DONE);
+                }
+            }
+            List<Blob> blobs = new ArrayList<>();
+            for (Future<List<Blob>> result : results) {
+                blobs.addAll(result.get());
+            }
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+            return blobs;
+        } catch (ExecutionException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Take names from QUEUE until DONE and return the Blobs of their
+     *  files.  After a failure, recorded in FAILURE, names are still
+     *  taken, so the walker is never left waiting, but not hashed. */
+    private static List<Blob> work(BlockingQueue<String> queue,
+                                   AtomicReference<RuntimeException> failure)
+        throws InterruptedException {
+        List<Blob> blobs = new ArrayList<>();
+        for (String name = queue.take(); !name.equals(DONE);
+             name = queue.take()) {
+            if (failure.get() != null) {
+                continue;
+            }
+            try {
+                blobs.add(new Blob(name));
+            } catch (RuntimeException excp) {
+                failure.compareAndSet(null, excp);
+            }
+        }
+        return blobs;
+    }
+
+    /** Put on QUEUE the name of every file PATHS name, once each,
+     *  except those IGNORE passes over and those SKIP accepts. */
+    private static void walk(List<String> paths, IgnoreRules ignore,
+                             Predicate<String> skip,
+                             BlockingQueue<String> queue)
+        throws InterruptedException {
+        Set<String> seen = new HashSet<>();
+        for (String path : paths) {
+            Path start = Paths.get(path).normalize();
+            if (!Files.isDirectory(start)) {
+                offer(queue, seen, skip, start);
+                continue;
+            }
+            try {
+                Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(
+                        Path dir, BasicFileAttributes attrs) {
+                        return !dir.equals(start)
+                            && (ignore.ignored(name(dir), true)
+                                || Files.exists(dir.resolve(".gitlet")))
+                            ? FileVisitResult.SKIP_SUBTREE
+                            : FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(
+                        Path file, BasicFileAttributes attrs)
+                        throws IOException {
+                        if (attrs.isRegularFile()
+                            && !ignore.ignored(name(file), false)) {
+                            try {
+                                offer(queue, seen, skip, file);
+                            } catch (InterruptedException excp) {
+                                throw new InterruptedIOException();
+                            }
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (InterruptedIOException excp) {
+                throw new InterruptedException();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Put the name of the file PATH on QUEUE, waiting for room, unless
+     *  it is in SEEN already or SKIP accepts it; add it to SEEN. */
+    private static void offer(BlockingQueue<String> queue, Set<String> seen,
+                              Predicate<String> skip, Path path)
+        throws InterruptedException {
+        String name = name(path);
+        if (seen.add(name) && !skip.test(name)) {
+            queue.put(name);
+        }
+    }
+
+    /** Return the name of the file PATH, with "/" between its parts. */
+    private static String name(Path path) {
+        return path.toString().replace(File.separatorChar, '/');
+    }
+}
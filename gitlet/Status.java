@@ -0,0 +1,70 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/** What the status command reports of a repository at one moment: its
+ *  branches and the files staged for addition and for removal, each in
+ *  name order.  A Status is a copy, so it does not change as the
+ *  repository does.
+ *  @author Ruize Xu
+ */
+public final class Status {
+
+    /** Name of the current branch. */
+    private final String _currentBranch;
+
+    /** Names of all branches, sorted. */
+    private final List<String> _branches;
+
+    /** Names of the files staged for addition, sorted. */
+    private final List<String> _staged;
+
+    /** Names of the files staged for removal, sorted. */
+    private final List<String> _removed;
+
+    /**
+     * The status of a repository whose current branch is CURRENT, with
+     * BRANCHES, STAGED files and REMOVED files.
+     * @param current String the current branch
+     * @param branches Collection of branch names
+     * @param staged Collection of files staged for addition
+     * @param removed Collection of files staged for removal
+     */
+    Status(String current, Collection<String> branches,
+           Collection<String> staged, Collection<String> removed) {
+        _currentBranch = current;
+        _branches = sorted(branches);
+        _staged = sorted(staged);
+        _removed = sorted(removed);
+    }
+
+    /** Return an unmodifiable sorted copy of NAMES. */
+    private static List<String> sorted(Collection<String> names) {
+        List<String> result = new ArrayList<String>(names);
+        Collections.sort(result);
+        return Collections.unmodifiableList(result);
+    }
+
+    /** Return the name of the current branch. */
+    public String getCurrentBranch() {
+        return _currentBranch;
+    }
+
+    /** Return the names of all branches, sorted. */
+    public List<String> getBranches() {
+        return _branches;
+    }
+
+    /** Return the names of the files staged for addition, sorted. */
+    public List<String> getStaged() {
+        return _staged;
+    }
+
+    /** Return the names of the files staged for removal, sorted. */
+    public List<String> getRemoved() {
+        return _removed;
+    }
+}
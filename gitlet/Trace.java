@@ -0,0 +1,158 @@
+package gitlet;
+
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Per-command tracing for Gitlet.  Repo, Utils and the ObjectStore
+ *  report what they do here; when tracing is on, Main
+ *  prints the wall time of each phase of the command and the counters
+ *  to standard error as the program exits.  When tracing is off, each
+ *  report costs a single test of a static flag.
+ *  @author Ruize Xu
+ */
+class Trace {
+
+    /** The things counted. */
+    enum Counter {
+        /** Stored blob or chunk objects opened for reading. */
+        OBJECTS_READ("objects read"),
+        /** Serialized objects (commits, refs, the repo) decoded. */
+        OBJECTS_DECODED("objects decoded"),
+        /** Bytes passed through SHA-1. */
+        BYTES_HASHED("bytes hashed"),
+        /** Working files whose size or type was looked up. */
+        FILES_STATED("files stat'd"),
+        /** Files read whole. */
+        FILES_READ("files read"),
+        /** Files written. */
+        FILES_WRITTEN("files written"),
+        /** Files and directories flushed to disk. */
+        FILES_SYNCED("files fsync'd"),
+        /** Commits found in the commit cache. */
+        CACHE_HITS("cache hits"),
+        /** Commits read from disk into the commit cache. */
+        CACHE_MISSES("cache misses");
+
+        /** The name printed for this counter. */
+        private final String _label;
+
+        /** A counter printed as LABEL. */
+        Counter(String label) {
+            _label = label;
+        }
+    }
+
+    /** True if tracing is on. */
+    private static volatile boolean _enabled;
+
+    /** Time tracing was turned on, from System.nanoTime(). */
+    private static long _start;
+
+    /** The value of each Counter, by ordinal. */
+    private static final LongAdder[] COUNTS =
+        new LongAdder[Counter.values().length];
+
+    static {
+        for (int i = 0; i < COUNTS.length; i += 1) {
+            COUNTS[i] = new LongAdder();
+        }
+    }
+
+    /** Total nanoseconds spent in each phase, in the order the phases
+     *  were first entered. */
+    private static final Map<String, Long> PHASES = new LinkedHashMap<>();
+
+    /** Phase returned when tracing is off, which records nothing. */
+    private static final Phase NO_PHASE = new Phase(null);
+
+    /** Turn tracing on. */
+    static void enable() {
+        _start = System.nanoTime();
+        _enabled = true;
+    }
+
+    /** Return true if tracing is on. */
+    static boolean enabled() {
+        return _enabled;
+    }
+
+    /** Add one to counter C. */
+    static void count(Counter c) {
+        if (_enabled) {
+            COUNTS[c.ordinal()].increment();
+        }
+    }
+
+    /** Add N to counter C. */
+    static void count(Counter c, long n) {
+        if (_enabled) {
+            COUNTS[c.ordinal()].add(n);
+        }
+    }
+
+    /** Return the current value of counter C. */
+    static long get(Counter c) {
+        return COUNTS[c.ordinal()].sum();
+    }
+
+    /** Start timing the phase NAME, which ends when the result is
+     *  closed.  A phase entered more than once is timed in total. */
+    static Phase phase(String name) {
+        return _enabled ? new Phase(name) : NO_PHASE;
+    }
+
+    /** Print the time since tracing was turned on, the phases, which
+     *  may nest, and the counters of COMMAND on OUT. */
+    static void report(PrintStream out, String command) {
+        out.printf("[trace] %s: %.1f ms%n", command,
+                   (System.nanoTime() - _start) / 1e6);
+        synchronized (PHASES) {
+            for (Map.Entry<String, Long> e : PHASES.entrySet()) {
+                out.printf("[trace]   %-16s %10.1f ms%n", e.getKey(),
+                           e.getValue() / 1e6);
+            }
+        }
+        for (Counter c : Counter.values()) {
+            out.printf("[trace]   %-16s %10d%n", c._label, get(c));
+        }
+    }
+
+    /** Set every counter and phase back to zero. */
+    static void reset() {
+        for (LongAdder count : COUNTS) {
+            count.reset();
+        }
+        synchronized (PHASES) {
+            PHASES.clear();
+        }
+    }
+
+    /** A phase being timed. */
+    static final class Phase implements AutoCloseable {
+
+        /** Name of the phase, or null if it is not recorded. */
+        private final String _name;
+
+        /** Time the phase started, from System.nanoTime(). */
+        private final long _start;
+
+        /** A phase called NAME starting now. */
+        private Phase(String name) {
+            _name = name;
+            _start = name == null ? 0 : System.nanoTime();
+        }
+
+        /** End the phase, adding its time to the phase total. */
+        @Override
+        public void close() {
+            if (_name != null) {
+                long nanos = System.nanoTime() - _start;
+                synchronized (PHASES) {
+                    PHASES.merge(_name, nanos, Long::sum);
+                }
+            }
+        }
+    }
+}
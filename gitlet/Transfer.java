@@ -0,0 +1,152 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.Consumer;
+
+/** Moves commits, and the objects they need, from one .gitlet directory
+ *  to another on the local file system.  A walk back through the
+ *  parents of the wanted commit stops at the first commits whose files
+ *  the destination already has, since having a commit implies having
+ *  all of its history.  Of the trees of the missing commits, only the
+ *  nodes the destination lacks are read, and only the files of their
+ *  leaves are considered, as the rest are shared with commits it has.
+ *  What is missing is then copied, in one batch, objects first and
+ *  commits last.
+ *  @author Ruize Xu
+ */
+class Transfer {
+
+    /** Return the commit with id UID stored in the .gitlet directory DIR. */
+    static Commit readCommit(File dir, String uid) {
+        Commit c = Utils.readObject(new File(dir, "commits/" + uid),
+                                    Commit.class);
+        c.setDir(dir);
+        return c;
+    }
+
+    /** Return the commits reachable from TIP in FROM that the .gitlet
+     *  directory TO does not have, by id, newest first. */
+    static LinkedHashMap<String, Commit> missingCommits(File from, File to,
+                                                        String tip) {
+        LinkedHashMap<String, Commit> missing = new LinkedHashMap<>();
+        HashSet<ObjectId> seen = new HashSet<>();
+        ArrayDeque<String> queue = new ArrayDeque<>();
+        queue.add(tip);
+        while (!queue.isEmpty()) {
+            String uid = queue.remove();
+            if (!seen.add(ObjectId.fromHex(uid))
+                || new File(to, "commits/" + uid).exists()) {
+                continue;
+            }
+            Commit c = readCommit(from, uid);
+            missing.put(uid, c);
+            String[] parents = c.getAllParentID();
+            if (parents != null) {
+                for (String p : parents) {
+                    queue.add(p);
+                }
+            }
+        }
+        return missing;
+    }
+
+    /** Return true iff the commit ANCESTOR is TIP or one of its ancestors
+     *  in the .gitlet directory DIR, asking its Reachability bitmaps. */
+    static boolean isAncestor(File dir, String ancestor, String tip) {
+        return Reachability.of(dir, Collections.singleton(tip),
+                               uid -> readCommit(dir, uid))
+            .isAncestor(ancestor, tip);
+    }
+
+    /** Give the .gitlet directory TO every commit, tree node, blob and
+     *  chunk in the .gitlet directory FROM.  These objects are never
+     *  modified once written, so they are hard-linked rather than
+     *  copied, falling back to a copy across file systems.  Return the
+     *  number of files copied rather than linked. */
+    static int linkAll(File from, File to) {
+        int copied = 0;
+        for (String kind : OBJECT_DIRS) {
+            File src = new File(from, kind);
+            File dst = new File(to, kind);
+            dst.mkdirs();
+            File[] files = src.listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (File f : files) {
+                File target = new File(dst, f.getName());
+                if (target.exists()) {
+                    continue;
+                }
+                try {
+                    Files.createLink(target.toPath(), f.toPath());
+                } catch (IOException | UnsupportedOperationException e) {
+                    WriteBatch.copy(f, target);
+                    copied += 1;
+                }
+            }
+        }
+        WriteBatch.sync();
+        FileTree.copyRewritten(from, to);
+        return copied;
+    }
+
+    /** Subdirectories of .gitlet holding immutable objects. */
+    static final String[] OBJECT_DIRS =
+        {"commits", "trees", "staging", "chunks"};
+
+    /** Copy into the .gitlet directory TO every commit reachable from TIP
+     *  in FROM that TO lacks, with the tree nodes, blobs and chunks they
+     *  track that TO lacks, durably, in one WriteBatch.  Return the
+     *  number of files copied. */
+    static int copy(File from, File to, String tip) {
+        LinkedHashMap<String, Commit> commits = missingCommits(from, to, tip);
+        LinkedHashSet<String> paths = new LinkedHashSet<>();
+        Consumer<Blob> objects = blob -> {
+            if (blob.isChunked()) {
+                for (String id : blob.getChunkIds()) {
+                    paths.add("chunks/" + id);
+                }
+            } else {
+                paths.add("staging/" + blob.getHashID());
+            }
+        };
+        for (Commit c : commits.values()) {
+            if (c.getTreeId() != null) {
+                FileTree.forEachNode(
+                    from, c.getTreeId(),
+                    id -> paths.contains("trees/" + id)
+                        || new File(to, "trees/" + id).exists(),
+                    id -> paths.add("trees/" + id), objects);
+            } else if (c.getBlobs() != null) {
+                c.getBlobs().values().forEach(objects);
+            }
+        }
+        List<String> uids = new ArrayList<>(commits.keySet());
+        for (int i = uids.size() - 1; i >= 0; i -= 1) {
+            paths.add("commits/" + uids.get(i));
+        }
+        int copied = 0;
+        new File(to, "chunks").mkdirs();
+        new File(to, "trees").mkdirs();
+        for (String path : paths) {
+            File target = new File(to, path);
+            if (!target.exists()) {
+                WriteBatch.copy(new File(from, path), target);
+                copied += 1;
+            }
+        }
+        WriteBatch.sync();
+        FileTree.copyRewritten(from, to);
+        return copied;
+    }
+}
@@ -0,0 +1,258 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** A three-way merge of the files of two commits against a base,
+ *  computed wholly in memory.  It makes the decisions merge has always
+ *  made, in the same order, but where merge wrote each file, staged it
+ *  and read the head commit again as it went, it only records what is
+ *  to be staged, removed, written and deleted.  Nothing touches the
+ *  working tree; the caller commits the result and then writes the
+ *  files in one pass, so a merge that fails leaves the tree as it was.
+ *  The contents of a conflicted file are stored as a blob, like any
+ *  other file to be written.
+ *
+ *  Maps of files may be null, for the initial commit, and are then
+ *  taken as empty.  Merge stops each of its two passes at the first
+ *  conflict of certain kinds, so which files it visits depends on the
+ *  order of the base and given maps; Repo passes them in the order it
+ *  always has.
+ *  @author Ruize Xu
+ */
+class TreeMerge {
+
+    /** The files of the common ancestor. */
+    private final Map<String, Blob> _base;
+
+    /** The files of the commit merged into. */
+    private final Map<String, Blob> _current;
+
+    /** The files of the commit merged in. */
+    private final Map<String, Blob> _given;
+
+    /** The files of the base visited by the first pass, in order. */
+    private final Collection<Blob> _baseOrder;
+
+    /** The files of the given commit visited by the second pass, in
+     *  order. */
+    private final Collection<Blob> _givenOrder;
+
+    /** The files to stage, by name. */
+    private final HashMap<String, Blob> _staged = new HashMap<>();
+
+    /** The names of the files to remove. */
+    private final ArrayList<String> _removed = new ArrayList<>();
+
+    /** The files to write to the working tree, by name, in order. */
+    private final LinkedHashMap<String, Blob> _writes =
+        new LinkedHashMap<>();
+
+    /** The names of the files to delete from the working tree. */
+    private final LinkedHashSet<String> _deletes = new LinkedHashSet<>();
+
+    /** The names of the files that conflicted, in the order met. */
+    private final ArrayList<String> _conflicts = new ArrayList<>();
+
+    /**
+     * The merge of GIVEN into CURRENT, whose common ancestor has the
+     * files BASE.
+     * @param base Map the files of the ancestor, in merge order
+     * @param current Map the files of the commit merged into
+     * @param given Map the files of the commit merged in, in merge order
+     */
+    TreeMerge(Map<String, Blob> base, Map<String, Blob> current,
+              Map<String, Blob> given) {
+        _base = base == null ? Collections.emptyMap() : base;
+        _current = current == null ? Collections.emptyMap() : current;
+        _given = given == null ? Collections.emptyMap() : given;
+        _baseOrder = _base.values();
+        _givenOrder = _given.values();
+        mergeForBase();
+        mergeForGiven();
+    }
+
+    /**
+     * The merge of GIVEN into CURRENT, whose common ancestor has the
+     * files BASE, where only the files CHANGED differ between BASE and
+     * GIVEN.  No other file can be staged, removed or conflict, so only
+     * these are visited, in order of name: the time grows with the
+     * changes rather than the files.
+     * @param base Map the files of the ancestor
+     * @param current Map the files of the commit merged into
+     * @param given Map the files of the commit merged in
+     * @param changed Collection of the names changed from BASE to GIVEN
+     */
+    TreeMerge(Map<String, Blob> base, Map<String, Blob> current,
+              Map<String, Blob> given, Collection<String> changed) {
+        _base = base == null ? Collections.emptyMap() : base;
+        _current = current == null ? Collections.emptyMap() : current;
+        _given = given == null ? Collections.emptyMap() : given;
+        List<String> names = new ArrayList<>(changed);
+        Collections.sort(names);
+        _baseOrder = new ArrayList<>();
+        _givenOrder = new ArrayList<>();
+        for (String name : names) {
+            if (_base.containsKey(name)) {
+                _baseOrder.add(_base.get(name));
+            }
+            if (_given.containsKey(name)) {
+                _givenOrder.add(_given.get(name));
+            }
+        }
+        mergeForBase();
+        mergeForGiven();
+    }
+
+    /** Return the files to stage, by name. */
+    Map<String, Blob> getStaged() {
+        return _staged;
+    }
+
+    /** Return the names of the files to remove. */
+    List<String> getRemoved() {
+        return _removed;
+    }
+
+    /** Return the files to write to the working tree, by name. */
+    Map<String, Blob> getWrites() {
+        return _writes;
+    }
+
+    /** Return the names of the files to delete from the working tree. */
+    Set<String> getDeletes() {
+        return _deletes;
+    }
+
+    /** Return the names of the files that conflicted. */
+    List<String> getConflicts() {
+        return _conflicts;
+    }
+
+    /** Return the files of the result: those of the commit merged into,
+     *  with the staged files added and the removed ones taken out. */
+    FileTree tree() {
+        FileTree tree = FileTree.of(_current);
+        for (Blob blob : _staged.values()) {
+            tree = tree.with(blob);
+        }
+        for (String name : _removed) {
+            tree = tree.without(name);
+        }
+        return tree;
+    }
+
+    /** Merge each file of the base, stopping at the first conflict over
+     *  a file both sides still have. */
+    private void mergeForBase() {
+        for (Blob blob : _baseOrder) {
+            String name = blob.getName();
+            boolean modifiedInCurrent = isModified(name, _base, _current);
+            boolean modifiedInGiven = isModified(name, _base, _given);
+            boolean modifiedBetween = isModified(name, _current, _given);
+            boolean inCurrent = _current.containsKey(name);
+            boolean inGiven = _given.containsKey(name);
+            if (inCurrent && !inGiven) {
+                if (modifiedInCurrent) {
+                    conflict(name);
+                } else {
+                    remove(name);
+                }
+            }
+            if (inCurrent && inGiven) {
+                if (modifiedBetween && modifiedInCurrent
+                    && modifiedInGiven) {
+                    conflict(name);
+                    break;
+                }
+                if (modifiedInGiven) {
+                    take(name);
+                }
+            }
+            if (!inCurrent && inGiven) {
+                if (modifiedInGiven) {
+                    conflict(name);
+                    break;
+                }
+            }
+        }
+    }
+
+    /** Merge each file of the given commit that the base lacks,
+     *  stopping at the first conflict. */
+    private void mergeForGiven() {
+        for (Blob blob : _givenOrder) {
+            String name = blob.getName();
+            boolean inBase = _base.containsKey(name);
+            boolean inCurrent = _current.containsKey(name);
+            if (!inCurrent) {
+                if (!inBase) {
+                    take(name);
+                }
+            } else if (!inBase && isModified(name, _current, _given)) {
+                conflict(name);
+                break;
+            }
+        }
+    }
+
+    /** Return true if the file NAME has different contents in H and I,
+     *  a missing file counting as different from any present one. */
+    private static boolean isModified(String name, Map<String, Blob> h,
+                                      Map<String, Blob> i) {
+        Blob b1 = h.get(name);
+        Blob b2 = i.get(name);
+        String id1 = b1 == null ? "" : b1.getHashID();
+        String id2 = b2 == null ? "" : b2.getHashID();
+        return !id1.equals(id2);
+    }
+
+    /** Take the given commit's version of the file NAME. */
+    private void take(String name) {
+        Blob blob = _given.get(name);
+        _deletes.remove(name);
+        _writes.put(name, blob);
+        _staged.put(name, blob);
+    }
+
+    /** Remove the file NAME, which the commit merged into tracks. */
+    private void remove(String name) {
+        _staged.remove(name);
+        _removed.add(name);
+        _writes.remove(name);
+        _deletes.add(name);
+    }
+
+    /** Record a conflict over the file NAME: its contents become both
+     *  versions, marked, stored as a blob and staged unless the commit
+     *  merged into has them already. */
+    private void conflict(String name) {
+        Blob current = _current.get(name);
+        Blob given = _given.get(name);
+        String contents = "<<<<<<< HEAD\n"
+            + (current == null ? "" : current.getContentsAsString())
+            + "=======\n"
+            + (given == null ? "" : given.getContentsAsString())
+            + ">>>>>>>\n";
+        Blob blob = new Blob(name,
+                             contents.getBytes(StandardCharsets.UTF_8));
+        _removed.remove(name);
+        if (current != null
+            && current.getHashID().equals(blob.getHashID())) {
+            _staged.remove(name);
+        } else {
+            _staged.put(name, blob);
+        }
+        _deletes.remove(name);
+        _writes.put(name, blob);
+        _conflicts.add(name);
+    }
+}
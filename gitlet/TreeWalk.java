@@ -0,0 +1,53 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/** The files tracked by one commit, as Blobs in name order.  The
+ *  contents are only read from the object store when one of a Blob's
+ *  views is asked for.
+ *  @author Ruize Xu
+ */
+public final class TreeWalk implements Iterable<Blob> {
+
+    /** The blobs, sorted by file name. */
+    private final List<Blob> _blobs;
+
+    /** The blobs, by file name. */
+    private final Map<String, Blob> _byName;
+
+    /**
+     * The files tracked by COMMIT.
+     * @param commit Commit the commit
+     */
+    TreeWalk(Commit commit) {
+        Map<String, Blob> blobs = commit.getBlobs();
+        _byName = blobs == null ? FileTree.EMPTY : blobs;
+        List<Blob> sorted = new ArrayList<Blob>(_byName.values());
+        sorted.sort(Comparator.comparing(Blob::getName));
+        _blobs = Collections.unmodifiableList(sorted);
+    }
+
+    /** Return the number of files. */
+    public int size() {
+        return _blobs.size();
+    }
+
+    /**
+     * Return the blob of the file NAME, or null if it is not tracked.
+     * @param name String the file name
+     * @return Blob the blob, or null
+     */
+    public Blob get(String name) {
+        return _byName.get(name);
+    }
+
+    @Override
+    public Iterator<Blob> iterator() {
+        return _blobs.iterator();
+    }
+}
@@ -4,6 +4,18 @@ import ucb.junit.textui;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
 /** The suite of all JUnit tests for the gitlet package.
  *  @author
  */
@@ -20,6 +32,448 @@ public class UnitTest {
     public void placeholderTest() {
     }
 
-}
+    /** Chunk boundaries depend only on content, so after an insertion
+     *  near the front the cut points realign with the original ones. */
+    @Test
+    public void chunkBoundariesResynchronize() {
+        byte[] data = new byte[2 * 1024 * 1024];
+        new Random(61).nextBytes(data);
+        byte[] shifted = new byte[data.length + 100];
+        System.arraycopy(data, 0, shifted, 100, data.length);
+        Set<Integer> cuts = new HashSet<>();
+        for (int off = 0; off < data.length;) {
+            off += Chunker.cut(data, off, data.length - off);
+            cuts.add(off);
+        }
+        int shared = 0;
+        for (int off = 0; off < shifted.length;) {
+            int len = Chunker.cut(shifted, off, shifted.length - off);
+            assertTrue(len >= Chunker.MIN_SIZE || off + len == shifted.length);
+            assertTrue(len <= Chunker.MAX_SIZE);
+            off += len;
+            if (cuts.contains(off - 100)) {
+                shared += 1;
+            }
+        }
+        assertTrue(shared > cuts.size() - 3);
+    }
 
+    /** A second writer waits for the lock and gives up at its timeout,
+     *  and can take the lock once the first lets it go. */
+    @Test
+    public void writerLockExcludesSecondWriter() throws IOException {
+        File dir = Files.createTempDirectory("lock").toFile();
+        RepoLock first = RepoLock.acquire(dir, 0);
+        try {
+            RepoLock.acquire(dir, 50).close();
+            fail("second writer took the lock");
+        } catch (GitletException excp) {
+            /* Expected. */
+        } finally {
+            first.close();
+        }
+        RepoLock.acquire(dir, 0).close();
+    }
+
+    /** The generator makes the same commits, ids included, from the same
+     *  options, wherever it writes them. */
+    @Test
+    public void generatedHistoryIsReproducible() throws IOException {
+        List<HashMap<String, String>> runs = new ArrayList<>();
+        File saved = ObjectStore.root();
+        try {
+            for (int i = 0; i < 2; i += 1) {
+                File root = Files.createTempDirectory("gen").toFile();
+                ObjectStore.setRoot(root);
+                ObjectStore.commitDir().mkdir();
+                ObjectStore.blobDir().mkdir();
+                RepoGenerator gen = new RepoGenerator();
+                gen.parse("--commits", "50", "--files", "10",
+                          "--topology", "criss-cross", "--seed", "3");
+                runs.add(gen.generate("0"));
+            }
+        } finally {
+            ObjectStore.setRoot(saved);
+        }
+        assertEquals(runs.get(0), runs.get(1));
+        assertEquals(3, runs.get(0).size());
+    }
+
+    /** The commit graph survives a round trip through its file, and its
+     *  filters match every path a commit changed and almost no other. */
+    @Test
+    public void commitGraphFiltersFindChangedPaths() throws IOException {
+        File dir = Files.createTempDirectory("graph").toFile();
+        File saved = ObjectStore.root();
+        List<String> ids = new ArrayList<>();
+        try {
+            ObjectStore.setRoot(dir);
+            ObjectStore.blobDir().mkdir();
+            CommitGraph graph = CommitGraph.read(dir);
+            HashMap<String, Blob> before = null;
+            for (int i = 0; i < 200; i += 1) {
+                HashMap<String, Blob> now = new HashMap<>();
+                if (before != null) {
+                    now.putAll(before);
+                }
+                String name = "f" + (i % 7) + ".txt";
+                now.put(name, new Blob(name, ("v" + i).getBytes()));
+                String[] parents = before == null ? null
+                    : new String[] {ids.get(i - 1)};
+                ids.add(Utils.sha1("commit " + i));
+                graph.add(ids.get(i), parents, now, before);
+                before = now;
+            }
+            graph.write();
+        } finally {
+            ObjectStore.setRoot(saved);
+        }
+        CommitGraph graph = CommitGraph.read(dir);
+        assertEquals(200, graph.size());
+        int falsePositives = 0;
+        for (int p = 0; p < 200; p += 1) {
+            assertEquals(ids.get(p), graph.id(p));
+            assertEquals(p - 1, graph.parent(p));
+            assertEquals(p, graph.position(ids.get(p)));
+            assertTrue(graph.mayChange(p, CommitGraph.key("f" + (p % 7)
+                                                          + ".txt")));
+            if (graph.mayChange(p, CommitGraph.key("other.txt"))) {
+                falsePositives += 1;
+            }
+        }
+        assertTrue(falsePositives < 3);
+    }
+
+    /** Bitmaps hold sparse and dense groups alike through union,
+     *  difference and a round trip through their serialized form. */
+    @Test
+    public void bitmapUnionAndDifference() {
+        Bitmap evens = new Bitmap();
+        Bitmap dense = new Bitmap();
+        for (int i = 0; i < 200000; i += 2) {
+            evens.add(i);
+        }
+        for (int i = 0; i < 10000; i += 1) {
+            dense.add(i);
+        }
+        assertEquals(100000, evens.cardinality());
+        assertTrue(evens.contains(199998) && !evens.contains(199999));
+        Bitmap odds = dense.andNot(evens);
+        assertEquals(5000, odds.cardinality());
+        assertTrue(odds.contains(9999) && !odds.contains(9998));
+        evens.or(dense);
+        assertEquals(105000, evens.cardinality());
+        ByteBuffer buffer = ByteBuffer.allocate(evens.byteSize());
+        evens.write(buffer);
+        buffer.flip();
+        Bitmap copy = Bitmap.read(buffer);
+        assertEquals(0, copy.andNot(evens).cardinality());
+        assertEquals(0, evens.andNot(copy).cardinality());
+    }
+
+    /** Stored reachability bitmaps agree with the ancestors computed
+     *  directly, for every commit and across merges, once written and
+     *  read back. */
+    @Test
+    public void reachabilityMatchesAncestry() throws IOException {
+        File dir = Files.createTempDirectory("bitmaps").toFile();
+        int n = 1500;
+        List<String> ids = new ArrayList<>();
+        List<HashSet<Integer>> ancestors = new ArrayList<>();
+        CommitGraph graph = CommitGraph.read(dir);
+        for (int i = 0; i < n; i += 1) {
+            ids.add(Utils.sha1("commit " + i));
+            HashSet<Integer> reach = new HashSet<>();
+            reach.add(i);
+            String[] parents = null;
+            if (i > 0 && i % 100 == 0) {
+                parents = new String[] {ids.get(i - 2), ids.get(i - 1)};
+                reach.addAll(ancestors.get(i - 2));
+                reach.addAll(ancestors.get(i - 1));
+            } else if (i > 0) {
+                parents = new String[] {ids.get(Math.max(0, i - 2))};
+                reach.addAll(ancestors.get(Math.max(0, i - 2)));
+            }
+            graph.add(ids.get(i), parents, null, null);
+            ancestors.add(reach);
+        }
+        graph.write();
+        Reachability bitmaps = Reachability.read(dir, graph);
+        assertTrue(bitmaps.update());
+        bitmaps.write();
+        bitmaps = Reachability.read(dir, CommitGraph.read(dir));
+        assertFalse(bitmaps.update());
+        for (int d = 0; d < n; d += 37) {
+            assertEquals(ancestors.get(d).size(),
+                         bitmaps.reachable(d).cardinality());
+            for (int a = 0; a < n; a += 13) {
+                assertEquals(ancestors.get(d).contains(a),
+                             bitmaps.isAncestor(ids.get(a), ids.get(d)));
+            }
+        }
+    }
+
+    /** An ObjectId survives hex and byte round trips, and compares,
+     *  hashes and matches prefixes as its hex string does. */
+    @Test
+    public void objectIdRoundTrips() {
+        String hex = Utils.sha1("object id");
+        ObjectId id = ObjectId.fromHex(hex);
+        assertEquals(hex, id.toHex());
+        assertEquals(id, ObjectId.fromHex(hex.toUpperCase()));
+        byte[] bytes = new byte[ObjectId.BYTES + 3];
+        id.copyTo(bytes, 3);
+        assertEquals(id, ObjectId.fromBytes(bytes, 3));
+        assertTrue(id.equalsAt(bytes, 3));
+        assertEquals(id.hashCode(), ObjectId.hashAt(bytes, 3));
+        assertTrue(id.startsWith(hex.substring(0, 6)));
+        assertFalse(id.startsWith(hex.substring(1, 7)));
+        String other = Utils.sha1("another id");
+        assertEquals(Integer.signum(hex.compareTo(other)),
+                     Integer.signum(id.compareTo(ObjectId.fromHex(other))));
+        assertFalse(ObjectId.isId(hex.substring(1)));
+        assertFalse(ObjectId.isId(hex.substring(1) + "g"));
+    }
 
+    /** A tree matches a map given the same changes, its id depends only
+     *  on its files, it survives being stored, and its changed names
+     *  are those of the maps. */
+    @Test
+    public void fileTreeMatchesMap() throws IOException {
+        File dir = Files.createTempDirectory("trees").toFile();
+        File saved = ObjectStore.root();
+        try {
+            ObjectStore.setRoot(dir);
+            ObjectStore.blobDir().mkdir();
+            Random random = new Random(44);
+            HashMap<String, Blob> map = new HashMap<>();
+            FileTree tree = FileTree.EMPTY;
+            for (int i = 0; i < 3000; i += 1) {
+                HashMap<String, Blob> before = new HashMap<>(map);
+                FileTree old = tree;
+                for (int k = 0; k < 3; k += 1) {
+                    String name = "d/f" + random.nextInt(1500) + ".txt";
+                    if (random.nextInt(4) == 0) {
+                        map.remove(name);
+                        tree = tree.without(name);
+                    } else {
+                        Blob blob = new Blob(name, ("v" + i).getBytes());
+                        map.put(name, blob);
+                        tree = tree.with(blob);
+                    }
+                }
+                if (i % 250 == 0) {
+                    assertEquals(map, tree);
+                    assertEquals(CommitGraph.changedPaths(map, before),
+                                 tree.changedNames(old));
+                }
+            }
+            assertEquals(map.size(), tree.size());
+            assertEquals(FileTree.of(map).id(), tree.id());
+            tree.store();
+            FileTree loaded = FileTree.load(dir, tree.id());
+            assertEquals(map, loaded);
+            String name = map.keySet().iterator().next();
+            assertTrue(loaded.without(name).changedNames(loaded)
+                       .equals(new HashSet<>(Arrays.asList(name))));
+        } finally {
+            ObjectStore.setRoot(saved);
+        }
+    }
+
+    /** Ignore rules match names at any depth, whole paths when they
+     *  have a "/", directories only when they end in one, and the last
+     *  matching rule decides. */
+    @Test
+    public void ignoreRulesMatchLikeGit() throws IOException {
+        File dir = Files.createTempDirectory("ignore").toFile();
+        Utils.writeContents(new File(dir, IgnoreRules.FILE),
+                            "# generated\nbuild/\n*.o\n!keep.o\n"
+                            + "/docs/*.html\nnode_modules\n**/tmp/*.swp\n"
+                            + "!Makefile\n");
+        IgnoreRules rules = IgnoreRules.of(dir);
+        assertTrue(rules.ignored("build", true));
+        assertTrue(rules.ignored("src/build", true));
+        assertFalse(rules.ignored("build", false));
+        assertTrue(rules.ignored("src/x.o", false));
+        assertFalse(rules.ignored("src/keep.o", false));
+        assertTrue(rules.ignored("docs/a.html", false));
+        assertFalse(rules.ignored("src/docs/a.html", false));
+        assertTrue(rules.ignored("a/node_modules", true));
+        assertTrue(rules.ignored("a/b/tmp/x.swp", false));
+        assertTrue(rules.ignored("tmp/x.swp", false));
+        assertTrue(rules.ignored(".DS_Store", false));
+        assertFalse(rules.ignored("Makefile", false));
+        assertTrue(rules.ignored(".gitlet", true));
+        assertFalse(rules.ignored("src/Main.java", false));
+        assertTrue(rules == IgnoreRules.of(dir));
+    }
+
+    /** Return true once TEST holds, polling it for up to ten seconds,
+     *  as a file system's events arrive a moment after the change. */
+    private static boolean eventually(java.util.function.BooleanSupplier
+                                      test) throws InterruptedException {
+        long end = System.currentTimeMillis() + 10000;
+        while (!test.getAsBoolean()) {
+            if (System.currentTimeMillis() > end) {
+                return false;
+            }
+            Thread.sleep(20);
+        }
+        return true;
+    }
+
+    /** A WorkTreeWatcher remembers the ids add and stateDetect hash,
+     *  trusts them only while the file keeps its size and time, and not
+     *  at all for a file changed just before it was hashed, whether or
+     *  not an event has arrived; and it follows files made and
+     *  deleted. */
+    @Test
+    public void watcherFollowsChanges() throws Exception {
+        File dir = Files.createTempDirectory("watch").toFile();
+        File a = new File(dir, "a.txt");
+        File sub = new File(dir, "sub");
+        sub.mkdir();
+        File c = new File(sub, "c.txt");
+        Utils.writeContents(a, "one");
+        Utils.writeContents(c, "three");
+        Utils.writeContents(new File(dir, ".DS_Store"), "");
+        long old = System.currentTimeMillis() - 10000;
+        a.setLastModified(old);
+        c.setLastModified(old);
+        WorkTreeWatcher watcher = WorkTreeWatcher.start(dir);
+        try {
+            assertTrue(watcher == WorkTreeWatcher.active(dir));
+            assertEquals(Arrays.asList("a.txt", "sub/c.txt"),
+                         watcher.files());
+            Blob one = new Blob(a.getPath());
+            Blob three = new Blob(c.getPath());
+            assertEquals(null, watcher.knownId("a.txt"));
+            watcher.remember("a.txt", one.getHashID(), old + 1000);
+            assertEquals(null, watcher.knownId("a.txt"));
+            watcher.remember("a.txt", one.getHashID(),
+                             System.currentTimeMillis());
+            assertEquals(one.getHashID(), watcher.knownId("a.txt"));
+            assertTrue(watcher.sameContents(one, "a.txt"));
+            assertTrue(watcher.sameContents(three, "sub/c.txt"));
+            assertEquals(one.getHashID(), watcher.knownId("a.txt"));
+            Utils.writeContents(a, "two");
+            Utils.writeContents(c, "four");
+            assertEquals(null, watcher.knownId("a.txt"));
+            assertFalse(watcher.sameContents(one, "a.txt"));
+            assertEquals(null, watcher.knownId("sub/c.txt"));
+            Blob two = new Blob(a.getPath());
+            assertTrue(watcher.sameContents(two, "a.txt"));
+            assertEquals(null, watcher.knownId("a.txt"));
+            File b = new File(dir, "b.txt");
+            Utils.writeContents(b, "");
+            assertTrue(eventually(() -> watcher.files().size() == 3));
+            a.delete();
+            assertTrue(eventually(
+                () -> watcher.files().equals(
+                    Arrays.asList("b.txt", "sub/c.txt"))));
+        } finally {
+            WorkTreeWatcher.stop();
+        }
+        assertTrue(WorkTreeWatcher.active(dir) == null);
+    }
+
+    /** fsck takes a tree leaf that migrate rewrote in place under its
+     *  old id as intact, with the blobs it now names, and still finds
+     *  such a leaf corrupt once it is damaged. */
+    @Test
+    public void fsckAcceptsMigratedLeaves() throws IOException {
+        File dir = Files.createTempDirectory("fsck").toFile();
+        File saved = ObjectStore.root();
+        try {
+            ObjectStore.setRoot(dir);
+            ObjectStore.blobDir().mkdir();
+            ObjectStore.commitDir().mkdir();
+            Blob blob = new Blob("a.txt", "one".getBytes());
+            WriteBatch.sync();
+            String oldId = Utils.sha1("a.txt", "one");
+            ObjectStore.blobFile(blob.getHashID())
+                .renameTo(ObjectStore.blobFile(oldId));
+            blob.setHashID(oldId);
+            FileTree tree = FileTree.EMPTY.with(blob);
+            tree.store();
+            WriteBatch.sync();
+            FileTree.rewriteLeaves(dir, b -> {
+                File old = ObjectStore.blobFile(b.getHashID());
+                old.renameTo(ObjectStore.blobFile(b.rehash()));
+            });
+            List<String> none = new ArrayList<>();
+            FsckReport report =
+                new Fsck(dir, true).run(none, new ArrayList<Blob>());
+            assertTrue(report.isIntact());
+            assertEquals(Arrays.asList("tree " + tree.id()),
+                         report.getDangling());
+            Utils.writeContents(new File(new File(dir, FileTree.DIR),
+                                         tree.id()), "damaged");
+            report = new Fsck(dir, true).run(none, new ArrayList<Blob>());
+            assertEquals(Arrays.asList("tree " + tree.id()),
+                         report.getCorrupt());
+        } finally {
+            ObjectStore.setRoot(saved);
+        }
+    }
+
+    /** An abbreviated commit id, in either case, names the one commit
+     *  whose id starts with it, and is refused if none or several do. */
+    @Test
+    public void shortIdsNameOneCommit() throws IOException {
+        File dir = Files.createTempDirectory("ids").toFile();
+        File saved = ObjectStore.root();
+        try {
+            ObjectStore.setRoot(dir);
+            ObjectStore.commitDir().mkdir();
+            String one = "ab12" + "0".repeat(Utils.UID_LENGTH - 4);
+            String two = "ab34" + "0".repeat(Utils.UID_LENGTH - 4);
+            Utils.writeContents(ObjectStore.commitFile(one), "");
+            Utils.writeContents(ObjectStore.commitFile(two), "");
+            assertEquals(one, Repo.shortToLong("ab1"));
+            assertEquals(two, Repo.shortToLong("AB34"));
+            assertEquals(one, Repo.shortToLong(one));
+            try {
+                Repo.shortToLong("ab");
+                fail("ambiguous id accepted");
+            } catch (GitletException excp) {
+                assertEquals("Ambiguous commit id.", excp.getMessage());
+            }
+            try {
+                Repo.shortToLong("cd");
+                fail("unknown id accepted");
+            } catch (NotFoundException excp) {
+                assertEquals("No commit with that id exists.",
+                             excp.getMessage());
+            }
+        } finally {
+            ObjectStore.setRoot(saved);
+        }
+    }
+
+    /** A discarded WriteBatch leaves no temporary file behind and none of
+     *  its objects for the next sync, and a sweep deletes the temporary
+     *  files no batch holds while sparing those that one does. */
+    @Test
+    public void writeBatchDiscardsAndSweeps() throws IOException {
+        File dir = Files.createTempDirectory("batch").toFile();
+        File objects = new File(dir, "staging");
+        objects.mkdir();
+        File target = new File(objects, "a");
+        WriteBatch.write(target, "one".getBytes());
+        assertTrue(WriteBatch.exists(target));
+        WriteBatch.discard();
+        WriteBatch.sync();
+        assertFalse(WriteBatch.exists(target));
+        File tmp = new File(dir, WriteBatch.TMP);
+        assertEquals(0, tmp.list().length);
+        File stale = new File(tmp, "left");
+        Utils.writeContents(stale, "x");
+        WriteBatch.write(target, "two".getBytes());
+        WriteBatch.sweep(dir);
+        assertFalse(stale.exists());
+        WriteBatch.sync();
+        assertEquals("two", Utils.readContentsAsString(target));
+    }
+}
@@ -0,0 +1,14 @@
+package gitlet;
+
+/** Signals that an operation would overwrite or delete a working file
+ *  that is not tracked, and so was refused.
+ *  @author Ruize Xu
+ */
+public class UntrackedFileException extends GitletException {
+
+    /** An UntrackedFileException with MSG as its message. */
+    public UntrackedFileException(String msg) {
+        super(msg);
+    }
+
+}
@@ -9,14 +9,16 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
 
 
@@ -33,27 +35,81 @@ class Utils {
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
+        Object event = Events.begin(Events.HASH);
         try {
             MessageDigest md = MessageDigest.getInstance("SHA-1");
+            long hashed = 0;
             for (Object val : vals) {
+                byte[] bytes;
                 if (val instanceof byte[]) {
-                    md.update((byte[]) val);
+                    bytes = (byte[]) val;
                 } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+                    bytes = ((String) val).getBytes(StandardCharsets.UTF_8);
                 } else {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
+                md.update(bytes);
+                hashed += bytes.length;
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
+            Trace.count(Trace.Counter.BYTES_HASHED, hashed);
+            String id = toHex(md.digest());
+            Events.end(event, id, hashed);
+            return id;
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** Returns the SHA-1 hash of the contents of FILE, which is read a
+     *  buffer at a time into direct (off-heap) memory. */
+    static String sha1File(File file) {
+        Object event = Events.begin(Events.HASH);
+        try (FileChannel in = FileChannel.open(file.toPath())) {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            ByteBuffer buf = HASH_BUFFER.get();
+            buf.clear();
+            long hashed = 0;
+            while (in.read(buf) >= 0) {
+                hashed += buf.position();
+                buf.flip();
+                md.update(buf);
+                buf.clear();
             }
-            return result.toString();
+            Trace.count(Trace.Counter.FILES_READ);
+            Trace.count(Trace.Counter.BYTES_HASHED, hashed);
+            String id = toHex(md.digest());
+            Events.end(event, file.getName(), hashed);
+            return id;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
     }
 
+    /** Returns DIGEST as a lower-case hexadecimal numeral. */
+    static String toHex(byte[] digest) {
+        char[] result = new char[2 * digest.length];
+        for (int i = 0; i < digest.length; i += 1) {
+            result[2 * i] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+            result[2 * i + 1] = HEX_DIGITS[digest[i] & 0xf];
+        }
+        return new String(result);
+    }
+
+    /** The hexadecimal digits, in order. */
+    private static final char[] HEX_DIGITS =
+        "0123456789abcdef".toCharArray();
+
+    /** Size of the buffer used when streaming file contents. */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    /** The direct buffer each thread hashes files through.  Allocating
+     *  and freeing a direct buffer costs more than hashing a small file,
+     *  and add hashes many from a few threads. */
+    private static final ThreadLocal<ByteBuffer> HASH_BUFFER =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
     /** Returns the SHA-1 hash of the concatenation of the strings in
      *  VALS. */
     static String sha1(List<Object> vals) {
@@ -94,6 +150,7 @@ class Utils {
         if (!file.isFile()) {
             throw new IllegalArgumentException("must be a normal file");
         }
+        Trace.count(Trace.Counter.FILES_READ);
         try {
             return Files.readAllBytes(file.toPath());
         } catch (IOException excp) {
@@ -118,16 +175,23 @@ class Utils {
                 throw
                     new IllegalArgumentException("cannot overwrite directory");
             }
+            Trace.count(Trace.Counter.FILES_WRITTEN);
+            Object event = Events.begin(Events.WRITE);
             BufferedOutputStream str =
                 new BufferedOutputStream(Files.newOutputStream(file.toPath()));
+            long written = 0;
             for (Object obj : contents) {
+                byte[] bytes;
                 if (obj instanceof byte[]) {
-                    str.write((byte[]) obj);
+                    bytes = (byte[]) obj;
                 } else {
-                    str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
+                    bytes = ((String) obj).getBytes(StandardCharsets.UTF_8);
                 }
+                str.write(bytes);
+                written += bytes.length;
             }
             str.close();
+            Events.end(event, file.getName(), written);
         } catch (IOException | ClassCastException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -137,11 +201,16 @@ class Utils {
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
                                                  Class<T> expectedClass) {
+        Trace.count(Trace.Counter.FILES_READ);
+        Trace.count(Trace.Counter.OBJECTS_DECODED);
+        Object event = Events.begin(Events.DECODE);
         try {
             ObjectInputStream in =
                 new ObjectInputStream(new FileInputStream(file));
             T result = expectedClass.cast(in.readObject());
             in.close();
+            Events.end(event, file.getName(),
+                       event != null ? file.length() : 0);
             return result;
         } catch (IOException | ClassCastException
                  | ClassNotFoundException excp) {
@@ -154,6 +223,42 @@ class Utils {
         writeContents(file, serialize(obj));
     }
 
+    /** Replace the contents of FILE by OBJ in one step: OBJ is written to
+     *  a new file beside FILE, flushed to disk and renamed over it, and
+     *  the directory is flushed, so that a concurrent reader of FILE, or
+     *  one after a crash, sees either its old or its new contents and
+     *  never a partial write.  Throws IllegalArgumentException in case
+     *  of problems. */
+    static void replaceObject(File file, Serializable obj) {
+        replaceContents(file, serialize(obj));
+    }
+
+    /** Replace the contents of FILE by CONTENTS in one step, as
+     *  replaceObject does.  Throws IllegalArgumentException in case of
+     *  problems. */
+    static void replaceContents(File file, byte[] contents) {
+        Path target = file.toPath();
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(target.toAbsolutePath().getParent(),
+                                       file.getName(), ".tmp");
+            writeContents(tmp.toFile(), (Object) contents);
+            WriteBatch.force(tmp.toFile());
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            try {
+                if (tmp != null) {
+                    Files.deleteIfExists(tmp);
+                }
+            } catch (IOException ignored) {
+                /* Leave it; it is never read. */
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        WriteBatch.forceDir(file.getAbsoluteFile().getParentFile());
+    }
+
     /* DIRECTORIES */
 
     /** Filter out all but plain files. */
@@ -238,6 +343,8 @@ class Utils {
     static Object deserialize(Path path) {
         File tmp = path.toFile();
         Object obj =  null;
+        Trace.count(Trace.Counter.FILES_READ);
+        Trace.count(Trace.Counter.OBJECTS_DECODED);
         try {
             ObjectInputStream inp = new ObjectInputStream(
                     new FileInputStream(tmp));
@@ -0,0 +1,340 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+/** A watch over a working tree, for processes that use a repository for
+ *  a long time through Repository.  Every directory of the tree that the
+ *  IgnoreRules do not pass over is registered with a WatchService, and
+ *  the events it has queued are applied before each question, so
+ *  answers cost time in proportion to the changes since the last one
+ *  rather than to the size of the tree:
+ *
+ *  the paths of the files of the tree are kept as a set, changed as
+ *  files and directories are made and deleted, so the untracked-file
+ *  check, checkout and reset need not walk the tree; and the content
+ *  id of each file add or stateDetect hashed since it last changed is
+ *  kept, so the next add skips files known to be as the head commit
+ *  has them and stateDetect hashes only files changed since.
+ *
+ *  Events arrive from a thread of the service some time after the
+ *  write, so an id is never trusted on the lack of an event alone: it
+ *  is kept with the size and modification time the file had when
+ *  hashed and used only while the file still has both.  A file changed
+ *  within RACY_MILLIS of being hashed, or while it was, could change
+ *  again without its time moving, on file systems whose clocks are
+ *  coarse, so its id is not kept at all and it is hashed again when
+ *  next asked about.
+ *
+ *  When the service overflows and events are lost, or the ignore rules
+ *  change, everything known is dropped and the next question starts
+ *  from a full scan, as without a watcher.  A file made or deleted is
+ *  seen once the operating system has reported it, which is at most a
+ *  moment after the write.
+ *  @author Ruize Xu
+ */
+class WorkTreeWatcher implements AutoCloseable {
+
+    /** Least age, in milliseconds, of a file's modification time when
+     *  it is hashed for its id to be kept; two seconds covers the
+     *  coarsest clocks of common file systems. */
+    static final long RACY_MILLIS = 2000;
+
+    /** The watcher of this process, or null if there is none. */
+    private static volatile WorkTreeWatcher _active;
+
+    /** The root of the working tree. */
+    private final Path _root;
+
+    /** The service the directories are registered with. */
+    private final WatchService _service;
+
+    /** The registered directories, relative to the root, by key. */
+    private final HashMap<WatchKey, Path> _dirs = new HashMap<>();
+
+    /** What is known of each file, by path from the root, hashed since
+     *  it last changed. */
+    private final HashMap<String, Hashed> _ids = new HashMap<>();
+
+    /** The paths from the root of the files of the tree that the rules
+     *  do not pass over, or null until the tree is next listed. */
+    private TreeSet<String> _files;
+
+    /** True if events were lost and all must be learned again. */
+    private boolean _rescan;
+
+    /** A watch over the working tree at ROOT, using SERVICE. */
+    private WorkTreeWatcher(Path root, WatchService service) {
+        _root = root;
+        _service = service;
+    }
+
+    /**
+     * Watch the working tree whose root is ROOT for this process, in
+     * place of any earlier watch, and return the watcher.
+     * @param root File the root of the working tree
+     * @return WorkTreeWatcher the watcher
+     */
+    static synchronized WorkTreeWatcher start(File root) {
+        stop();
+        Path path = root.toPath().toAbsolutePath().normalize();
+        try {
+            WorkTreeWatcher watcher = new WorkTreeWatcher(
+                path, FileSystems.getDefault().newWatchService());
+            watcher.register(path);
+            _active = watcher;
+            return watcher;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Stop the watch of this process, if there is one. */
+    static synchronized void stop() {
+        if (_active != null) {
+            _active.close();
+            _active = null;
+        }
+    }
+
+    /** Return the watcher of this process, or null if there is none or
+     *  it does not watch the working tree ROOT. */
+    static WorkTreeWatcher active(File root) {
+        WorkTreeWatcher watcher = _active;
+        if (watcher == null || !watcher._root.equals(
+                root.toPath().toAbsolutePath().normalize())) {
+            return null;
+        }
+        return watcher;
+    }
+
+    /** Return the paths from the root, with "/" between their parts, of
+     *  the files of the tree that the rules do not pass over, walking
+     *  the tree only if they are not known. */
+    synchronized List<String> files() {
+        drain();
+        if (_files == null) {
+            _files = new TreeSet<>();
+            IgnoreRules.of(_root.toFile()).collect(_root, _root, _files);
+        }
+        return new ArrayList<>(_files);
+    }
+
+    /**
+     * Return true if the file at PATH, relative to the root, has the
+     * contents of BLOB, hashing it only if it changed since last hashed.
+     * @param blob Blob the tracked version
+     * @param path String the path from the root, with "/" separators
+     * @return boolean true if the contents are the same
+     */
+    synchronized boolean sameContents(Blob blob, String path) {
+        drain();
+        File file = _root.resolve(path).toFile();
+        if (blob.isChunked()) {
+            return ObjectStore.sameContents(blob, file);
+        }
+        String id = cachedId(path, file);
+        if (id == null) {
+            if (!file.isFile()) {
+                return false;
+            }
+            long started = System.currentTimeMillis();
+            id = Utils.sha1File(file);
+            keep(path, file, id, started);
+        }
+        return id.equals(blob.getHashID());
+    }
+
+    /**
+     * Keep ID as the content id of the file at PATH, relative to the
+     * root, which was hashed no earlier than STARTED, a time as from
+     * System.currentTimeMillis, so that add need not hash it again.
+     * @param path String the path from the root, with "/" separators
+     * @param id String the id of its contents
+     * @param started long when hashing began
+     */
+    synchronized void remember(String path, String id, long started) {
+        drain();
+        keep(path, _root.resolve(path).toFile(), id, started);
+    }
+
+    /** Keep ID for FILE, at PATH from the root, hashed from STARTED on,
+     *  with its size and modification time, unless it was modified
+     *  later than RACY_MILLIS before STARTED. */
+    private void keep(String path, File file, String id, long started) {
+        long modified = file.lastModified();
+        if (file.isFile() && modified < started - RACY_MILLIS) {
+            _ids.put(path, new Hashed(id, file.length(), modified));
+        }
+    }
+
+    /** Return the content id of the file at PATH, relative to the root,
+     *  if it was hashed since it last changed and still has the size and
+     *  modification time it had then, and otherwise null. */
+    synchronized String knownId(String path) {
+        drain();
+        return cachedId(path, _root.resolve(path).toFile());
+    }
+
+    /** Return the id kept for FILE, at PATH from the root, if FILE still
+     *  has the size and modification time it had when hashed, and
+     *  otherwise forget it and return null. */
+    private String cachedId(String path, File file) {
+        Hashed hashed = _ids.get(path);
+        if (hashed == null) {
+            return null;
+        }
+        if (file.length() != hashed._size
+            || file.lastModified() != hashed._modified) {
+            _ids.remove(path);
+            return null;
+        }
+        return hashed._id;
+    }
+
+    /** Apply the events queued since the last call. */
+    private void drain() {
+        try {
+            for (WatchKey key = _service.poll(); key != null;
+                 key = _service.poll()) {
+                Path dir = _dirs.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                        || dir == null) {
+                        _rescan = true;
+                    } else {
+                        changed(dir.resolve((Path) event.context()),
+                                event.kind());
+                    }
+                }
+                if (!key.reset()) {
+                    _dirs.remove(key);
+                }
+            }
+        } catch (ClosedWatchServiceException excp) {
+            _rescan = true;
+        }
+        if (_rescan) {
+            _rescan = false;
+            _ids.clear();
+            _files = null;
+            register(_root);
+        }
+    }
+
+    /** Forget what is known of the file or directory at PATH, relative
+     *  to the root, which had an event of KIND. */
+    private void changed(Path path, WatchEvent.Kind<?> kind) {
+        String name = path.toString().replace(File.separatorChar, '/');
+        if (name.equals(IgnoreRules.FILE)) {
+            _rescan = true;
+            return;
+        }
+        _ids.remove(name);
+        Path full = _root.resolve(path);
+        boolean isDir = Files.isDirectory(full);
+        if (kind == StandardWatchEventKinds.ENTRY_DELETE || isDir) {
+            String prefix = name + "/";
+            for (Iterator<String> i = _ids.keySet().iterator();
+                 i.hasNext();) {
+                if (i.next().startsWith(prefix)) {
+                    i.remove();
+                }
+            }
+        }
+        if (kind == StandardWatchEventKinds.ENTRY_CREATE && isDir) {
+            register(full);
+        }
+        if (_files != null) {
+            IgnoreRules ignore = IgnoreRules.of(_root.toFile());
+            _files.remove(name);
+            _files.subSet(name + "/", name + "0").clear();
+            if (Files.isRegularFile(full) && !ignore.ignored(name, false)) {
+                _files.add(name);
+            } else if (isDir && !ignore.ignored(name, true)) {
+                ignore.collect(_root, full, _files);
+            }
+        }
+    }
+
+    /** Register the directory START and those below it that the rules
+     *  do not pass over; those registered already stay as they are. */
+    private void register(Path start) {
+        IgnoreRules ignore = IgnoreRules.of(_root.toFile());
+        try {
+            Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(
+                    Path dir, BasicFileAttributes attrs) throws IOException {
+                    Path relative = _root.relativize(dir);
+                    String name = relative.toString()
+                        .replace(File.separatorChar, '/');
+                    if (!name.isEmpty() && ignore.ignored(name, true)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    WatchKey key = dir.register(
+                        _service, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                    _dirs.put(key, relative);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file,
+                                                       IOException excp) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** What was learned of a file when it was hashed. */
+    private static final class Hashed {
+
+        /** The content id. */
+        private final String _id;
+
+        /** The size in bytes. */
+        private final long _size;
+
+        /** The modification time, in milliseconds. */
+        private final long _modified;
+
+        /** A file with content id ID, of SIZE bytes, last modified at
+         *  MODIFIED. */
+        Hashed(String id, long size, long modified) {
+            _id = id;
+            _size = size;
+            _modified = modified;
+        }
+    }
+
+    /** Stop watching. */
+    @Override
+    public synchronized void close() {
+        try {
+            _service.close();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
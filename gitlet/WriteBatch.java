@@ -0,0 +1,190 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/** The durable write path of the object store.  A new object is first
+ *  written to a temporary file in the directory "tmp" beside the object
+ *  directories, where listings of the objects never see it, and is
+ *  only renamed into place by sync(), once it is known to be on disk.
+ *  sync() asks for all the batch's files to be flushed at once, so the
+ *  file system commits them together rather than one journal write
+ *  each, then renames them and flushes each directory they went into
+ *  once.  Callers sync before they replace the refs, the last and only
+ *  step that makes new objects reachable, so a crash at any point
+ *  leaves the refs pointing at complete objects; an object cut short by
+ *  a crash is never under its name, as the existence tests that skip
+ *  storing an object again assume.
+ *
+ *  Objects of a batch are not yet under their names, so nothing reads
+ *  an object written since the last sync() before syncing.  A command
+ *  that fails discards its batch; the temporary files of a process
+ *  that died before syncing are swept by the next writer, which holds
+ *  the RepoLock and so knows no other writer is filling "tmp".
+ *  @author Ruize Xu
+ */
+class WriteBatch {
+
+    /** Name of the directory, beside the object directories, holding
+     *  the objects being written. */
+    static final String TMP = "tmp";
+
+    /** Objects written since the last sync, by the file each is to be
+     *  renamed to, mapped to the temporary file holding it.  Guarded by
+     *  itself. */
+    private static final Map<File, File> PENDING = new LinkedHashMap<>();
+
+    /** Return true if the object file TARGET exists or is in the
+     *  batch. */
+    static boolean exists(File target) {
+        synchronized (PENDING) {
+            if (PENDING.containsKey(target)) {
+                return true;
+            }
+        }
+        return target.exists();
+    }
+
+    /** Add to the batch an object file TARGET holding CONTENTS, unless
+     *  it exists already. */
+    static void write(File target, byte[] contents) {
+        if (!exists(target)) {
+            File tmp = temp(target);
+            Utils.writeContents(tmp, (Object) contents);
+            add(target, tmp);
+        }
+    }
+
+    /** Add to the batch an object file TARGET holding a copy of the file
+     *  SRC, unless it exists already. */
+    static void copy(File src, File target) {
+        if (!exists(target)) {
+            File tmp = temp(target);
+            try {
+                Files.copy(src.toPath(), tmp.toPath(),
+                           StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            Trace.count(Trace.Counter.FILES_WRITTEN);
+            add(target, tmp);
+        }
+    }
+
+    /** Return a new, empty temporary file for the object file TARGET,
+     *  for the caller to fill and pass to add(). */
+    static File temp(File target) {
+        File dir = new File(target.getAbsoluteFile().getParentFile()
+                            .getParentFile(), TMP);
+        dir.mkdirs();
+        try {
+            return Files.createTempFile(dir.toPath(), target.getName(),
+                                        null).toFile();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Add to the batch the object file TARGET, written to the file TMP
+     *  from temp(); if TARGET is in the batch already, TMP is
+     *  deleted. */
+    static void add(File target, File tmp) {
+        synchronized (PENDING) {
+            if (PENDING.containsKey(target)) {
+                tmp.delete();
+            } else {
+                PENDING.put(target, tmp);
+            }
+        }
+    }
+
+    /** Flush every object of the batch to disk together, rename each
+     *  into place and flush the directories they went into, once each,
+     *  so that all are durable under their names on return. */
+    static void sync() {
+        List<Map.Entry<File, File>> batch;
+        synchronized (PENDING) {
+            if (PENDING.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(PENDING.entrySet());
+            PENDING.clear();
+        }
+        batch.parallelStream().forEach(entry -> force(entry.getValue()));
+        TreeSet<File> dirs = new TreeSet<>();
+        try {
+            for (Map.Entry<File, File> entry : batch) {
+                File target = entry.getKey();
+                Files.move(entry.getValue().toPath(), target.toPath(),
+                           StandardCopyOption.ATOMIC_MOVE,
+                           StandardCopyOption.REPLACE_EXISTING);
+                dirs.add(target.getAbsoluteFile().getParentFile());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        dirs.parallelStream().forEach(WriteBatch::forceDir);
+    }
+
+    /** Drop every object written since the last sync, deleting the
+     *  temporary files holding them, as after a command that failed. */
+    static void discard() {
+        synchronized (PENDING) {
+            for (File tmp : PENDING.values()) {
+                tmp.delete();
+            }
+            PENDING.clear();
+        }
+    }
+
+    /** Delete the temporary files in the shared .gitlet directory DIR
+     *  that no batch of this process holds: those left by a process
+     *  that stopped before syncing.  The caller holds the RepoLock of
+     *  DIR. */
+    static void sweep(File dir) {
+        File[] files = new File(dir, TMP).listFiles();
+        if (files == null) {
+            return;
+        }
+        synchronized (PENDING) {
+            for (File file : files) {
+                if (!PENDING.containsValue(file.getAbsoluteFile())) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /** Flush the contents of FILE to disk. */
+    static void force(File file) {
+        Trace.count(Trace.Counter.FILES_SYNCED);
+        try (FileChannel channel =
+                 FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Flush the entries of the directory DIR to disk, where the system
+     *  allows a directory to be opened; where it does not, as on
+     *  Windows, a rename is durable once it returns. */
+    static void forceDir(File dir) {
+        Trace.count(Trace.Counter.FILES_SYNCED);
+        try (FileChannel channel =
+                 FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            /* Not supported here. */
+        }
+    }
+}
@@ -1,9 +1,11 @@
-import sys, re
+import sys, re, json
+from time import perf_counter
 from subprocess import \
      check_output, PIPE, STDOUT, DEVNULL, CalledProcessError, TimeoutExpired
 from os.path import abspath, basename, dirname, exists, join, splitext
 from getopt import getopt, GetoptError
-from os import chdir, environ, getcwd, mkdir, remove, access, W_OK
+from os import chdir, environ, getcwd, makedirs, mkdir, remove, access, \
+    W_OK
 from shutil import copyfile, rmtree
 from math import log
 
@@ -22,6 +24,13 @@ Usage: python3 tester.py OPTIONS TEST.in ...
        --tolerance=N  Set the maximum allowed edit distance between program
                       output and expected output to N (default 3).
        --verbose      Print extra information about execution.
+       --repeat=N     Run each timed (P) command N times and keep the
+                      fastest (default 3).
+       --budget-scale=F
+                      Multiply every time budget (B) by F, for slower
+                      machines (default 1).
+       --report=FILE  Write the outcome and timings of each test to FILE
+                      as JSON.
 """
 
 USAGE = SHORT_USAGE + """\
@@ -46,7 +55,8 @@ The instructions each have one of the following forms:
    T N    Set the timeout for gitlet commands in the rest of this test to N
           seconds.
    + NAME F
-          Copy the contents of src/F into a file named NAME.
+          Copy the contents of src/F into a file named NAME, making
+          the directories above it if need be.
    - NAME
           Delete the file named NAME.
    > COMMAND OPERANDS
@@ -75,6 +85,25 @@ The instructions each have one of the following forms:
           taken to be a raw Python string (as in r"VALUE").  Substitutions are
           first applied to VALUE.
 
+The following instructions support performance tests:
+
+   G OPTIONS
+          Generate a repository in the current directory by running
+          gitlet.RepoGenerator with OPTIONS, allowing it at least
+          GENERATE_TIMEOUT seconds.
+   P NAME COMMAND OPERANDS
+          Run gitlet.Main with COMMAND OPERANDS as its parameters, --repeat
+          times, ignoring its output but reporting an error if it fails, and
+          record the fastest wall-clock time as the timing NAME.
+   B NAME SEC
+          Check that the timing NAME is at most SEC seconds (times
+          --budget-scale), and report an error if not.
+   R NAME1 NAME2 RATIO
+          Check that the timing NAME2 is at most RATIO times the timing
+          NAME1, and report an error if not.  Timing the same command on
+          inputs N times apart, a RATIO a little above N checks that it
+          grows no faster than linearly.
+
 For each TEST.in, reports at most one error.  Without the --show option,
 simply indicates tests passed and failed.  If N is postive, also prints details
 of the first N failing tests. With --show=all, shows details of all failing
@@ -85,7 +114,9 @@ When finished, reports number of tests passed and failed, and the number of
 faulty TEST.in files."""
 
 GITLET_COMMAND = "java -ea gitlet.Main"
+GENERATE_COMMAND = "java gitlet.RepoGenerator"
 TIMEOUT = 10
+GENERATE_TIMEOUT = 600
 
 def Usage():
     print(SHORT_USAGE, file=sys.stderr)
@@ -140,16 +171,17 @@ def doDelete(name, dir):
 def doCopy(dest, src, dir):
     try:
         doDelete(dest, dir)
+        makedirs(dirname(join(dir, dest)), exist_ok=True)
         copyfile(join(src_dir, src), join(dir, dest))
     except OSError:
         raise ValueError("file {} could not be copied to {}".format(src, dest))
 
-def doExecute(cmnd, dir, timeout):
+def doExecute(cmnd, dir, timeout, program=None):
     here = getcwd()
     out = ""
     try:
         chdir(dir)
-        full_cmnd = "{} {}".format(GITLET_COMMAND, cmnd)
+        full_cmnd = "{} {}".format(program or GITLET_COMMAND, cmnd)
         out = check_output(full_cmnd, shell=True, universal_newlines=True,
                            stdin=DEVNULL, stderr=STDOUT, timeout=timeout)
         return "OK", out
@@ -161,6 +193,18 @@ def doExecute(cmnd, dir, timeout):
     finally:
         chdir(here)
 
+def doTime(cmnd, dir, timeout):
+    best = None
+    for _ in range(repeat):
+        start = perf_counter()
+        msg, out = doExecute(cmnd, dir, timeout)
+        elapsed = perf_counter() - start
+        if msg != "OK":
+            return msg, None
+        if best is None or elapsed < best:
+            best = elapsed
+    return "OK", best
+
 def canonicalize(s):
     if s is None:
         return None
@@ -243,6 +287,28 @@ def doTest(test):
         print("Testing directory: {}".format(tmpdir))
     timeout = TIMEOUT
     defns = {}
+    timings = {}
+    checks = []
+    record = { "test": base, "status": "OK", "timings": timings,
+               "checks": checks }
+    report.append(record)
+
+    def timing(name):
+        if name not in timings:
+            raise ValueError("no timing named {}".format(name))
+        return timings[name]
+
+    def check(kind, names, actual, limit):
+        checks.append({ "kind": kind, "names": names, "actual": actual,
+                        "limit": limit, "ok": actual <= limit })
+        if actual > limit:
+            record["status"] = "{} {} over budget".format(kind,
+                                                          " / ".join(names))
+            print("ERROR ({}: {:.3f} > {:.3f})"
+                  .format(record["status"], actual, limit))
+            reportDetails(test, included_files, line_num)
+            return False
+        return True
 
     def do_substs(L):
         c = 0
@@ -322,28 +388,62 @@ def doTest(test):
                                                 is_regexp):
                         msg = "incorrect output"
                 if msg != "OK":
+                    record["status"] = msg
                     print("ERROR ({})".format(msg))
                     reportDetails(test, included_files, line_num)
                     return False
             elif Match(r'=\s*(\S+)\s+(\S+)', line):
                 if not correctFileOutput(Group(1), Group(2), cdir):
-                    print("ERROR (file {} has incorrect content)"
-                          .format(Group(1)))
+                    record["status"] = "file {} has incorrect content".format(Group(1))
+                    print("ERROR ({})".format(record["status"]))
                     reportDetails(test, included_files, line_num)
                     return False
             elif Match(r'\*\s*(\S+)', line):
                 if fileExists(Group(1), cdir):
-                    print("ERROR (file {} present)".format(Group(1)))
+                    record["status"] = "file {} present".format(Group(1))
+                    print("ERROR ({})".format(record["status"]))
                     reportDetails(test, included_files, line_num)
                     return False
             elif Match(r'E\s*(\S+)', line):
                 if not fileExists(Group(1), cdir):
-                    print("ERROR (file or directory {} not present)"
-                          .format(Group(1)))
+                    record["status"] = "file or directory {} not present".format(Group(1))
+                    print("ERROR ({})".format(record["status"]))
                     reportDetails(test, included_files, line_num)
                     return False
             elif Match(r'(?s)D\s*([a-zA-Z_][a-zA-Z_0-9]*)\s*"(.*)"\s*$', line):
                 defns[Group(1)] = Group(2)
+            elif Match(r'G\s*(.*)', line):
+                msg, out = doExecute(Group(1), cdir,
+                                     max(timeout, GENERATE_TIMEOUT),
+                                     GENERATE_COMMAND)
+                if verbose and out:
+                    print(re.sub(r'(?m)^', '- ', chop_nl(out)))
+                if msg != "OK":
+                    record["status"] = "generate failed: {}".format(msg)
+                    print("ERROR ({})".format(record["status"]))
+                    reportDetails(test, included_files, line_num)
+                    return False
+            elif Match(r'P\s*(\S+)\s+(.*)', line):
+                name = Group(1)
+                msg, elapsed = doTime(Group(2), cdir, timeout)
+                if msg != "OK":
+                    record["status"] = msg
+                    print("ERROR ({})".format(msg))
+                    reportDetails(test, included_files, line_num)
+                    return False
+                timings[name] = elapsed
+                if verbose:
+                    print("- {}: {:.3f}s".format(name, elapsed))
+            elif Match(r'B\s*(\S+)\s+(\S+)', line):
+                if not check("budget", [Group(1)], timing(Group(1)),
+                             float(Group(2)) * budget_scale):
+                    return False
+            elif Match(r'R\s*(\S+)\s+(\S+)\s+(\S+)', line):
+                name1, name2, ratio = Group(1), Group(2), float(Group(3))
+                if not check("ratio", [name1, name2],
+                             timing(name2) / max(timing(name1), 1e-9),
+                             ratio):
+                    return False
             else:
                 raise ValueError("bad test line at {}".format(line_num))
     finally:
@@ -357,12 +457,16 @@ if __name__ == "__main__":
     verbose = False
     src_dir = 'src'
     output_tolerance = 3
+    repeat = 3
+    budget_scale = 1.0
+    report_file = None
+    report = []
 
     try:
         opts, files = \
             getopt(sys.argv[1:], '',
                    ['show=', 'keep', 'progdir=', 'verbose', 'src=',
-                    'tolerance='])
+                    'tolerance=', 'repeat=', 'budget-scale=', 'report='])
         for opt, val in opts:
             if opt == '--show':
                 val = val.lower()
@@ -382,6 +486,12 @@ if __name__ == "__main__":
                 verbose = True
             elif opt == "--tolerance":
                 output_tolerance = int(val)
+            elif opt == "--repeat":
+                repeat = max(1, int(val))
+            elif opt == "--budget-scale":
+                budget_scale = float(val)
+            elif opt == "--report":
+                report_file = val
         if prog_dir is None:
             prog_dir = abspath(getcwd())
             k = 10
@@ -405,6 +515,7 @@ if __name__ == "__main__":
     else:
         environ['CLASSPATH'] = "{}:{}".format(prog_dir, environ['CLASSPATH'])
         GITLET_COMMAND = 'exec ' + GITLET_COMMAND
+        GENERATE_COMMAND = 'exec ' + GENERATE_COMMAND
 
     num_tests = len(files)
     errs = 0
@@ -420,8 +531,16 @@ if __name__ == "__main__":
                     show -= 1
         except ValueError as excp:
             print("FAILED ({})".format(excp.args[0]))
+            if report and report[-1]["status"] == "OK":
+                report[-1]["status"] = "FAILED ({})".format(excp.args[0])
             fails += 1
                   
+    if report_file is not None:
+        with open(report_file, "w") as out:
+            json.dump({ "tests": report, "passed": num_tests - errs - fails,
+                        "failed": errs + fails }, out, indent=2)
+            out.write("\n")
+
     print()
     print("Ran {} tests. ".format(num_tests), end="")
     if errs == fails == 0: